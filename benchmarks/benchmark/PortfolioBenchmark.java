@@ -0,0 +1,160 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.ParseException;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import model.IPortfolio;
+import model.IPortfolioPerformanceData;
+import model.IStock;
+import model.PortfolioBalanceVisitor;
+import model.stockdatastore.IStockDataStore;
+import model.stockdatastore.StockDataSource;
+
+/**
+ * This class benchmarks the portfolio operations that scale with the size of a portfolio:
+ * valuation, performance data, cost basis and rebalancing, over synthetic portfolios of 10 to
+ * 100,000 lots spread over 1 to 5,000 tickers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PortfolioBenchmark {
+  private static final LocalDate VALUATION_DATE = SyntheticMarket.LAST_MARKET_DATE;
+  private static final long PORTFOLIO_SEED = 42;
+
+  @Param({"10", "1000", "100000"})
+  public int lots;
+
+  @Param({"1", "100", "5000"})
+  public int tickers;
+
+  private SyntheticMarket market;
+  private IStockDataStore dataStore;
+  private IPortfolio portfolio;
+  private Map<String, Double> targetWeights;
+
+  /**
+   * Create the market, the store and the portfolio, and compute equal target weights for the
+   * rebalancing.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    market = SyntheticMarket.create(tickers);
+    dataStore = market.newDataStore(StockDataSource.LocalDataFiles);
+    portfolio = market.generatePortfolio(dataStore, lots, PORTFOLIO_SEED);
+
+    targetWeights = new LinkedHashMap<>();
+    for (IStock stock : portfolio.getStocksList()) {
+      targetWeights.put(stock.getStockName(), 0d);
+    }
+    for (String ticker : targetWeights.keySet()) {
+      targetWeights.put(ticker, 100d / targetWeights.size());
+    }
+  }
+
+  /**
+   * Delete the market's files.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    market.delete();
+  }
+
+  /**
+   * Value the portfolio on one date.
+   *
+   * @return the portfolio value
+   */
+  @Benchmark
+  public double getPortfolioValue() {
+    return portfolio.getPortfolioValue(dataStore, VALUATION_DATE);
+  }
+
+  /**
+   * Compute the portfolio's performance over the last ten months, one value per month.
+   *
+   * @return the performance data
+   */
+  @Benchmark
+  public IPortfolioPerformanceData getMonthlyPerformanceData() {
+    return portfolio.getPerformanceData(VALUATION_DATE.minusMonths(10), VALUATION_DATE,
+            dataStore);
+  }
+
+  /**
+   * Compute the portfolio's performance since the first purchase date, one value every three
+   * months.
+   *
+   * @return the performance data
+   */
+  @Benchmark
+  public IPortfolioPerformanceData getQuarterlyPerformanceData() {
+    return portfolio.getPerformanceData(SyntheticMarket.FIRST_PURCHASE_DATE, VALUATION_DATE,
+            dataStore);
+  }
+
+  /**
+   * Compute the portfolio's cost basis on one date.
+   *
+   * @return the cost basis
+   */
+  @Benchmark
+  public double getCostBasis() {
+    return portfolio.getCostBasis(VALUATION_DATE);
+  }
+
+  /**
+   * Rebalance an unbalanced copy of the portfolio to equal weights of its tickers.
+   *
+   * @param unbalanced the copy of the portfolio to be rebalanced
+   * @return the rebalanced portfolio
+   * @throws ParseException if a purchase date could not be parsed
+   */
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public IPortfolio rebalance(UnbalancedPortfolio unbalanced) throws ParseException {
+    return new PortfolioBalanceVisitor<IPortfolio>(VALUATION_DATE, dataStore, targetWeights,
+        p -> p).apply(unbalanced.portfolio);
+  }
+
+  /**
+   * The portfolio rebalanced by one invocation of the rebalance benchmark. Rebalancing adds its
+   * trades to the portfolio, after which a second rebalance would have almost nothing to trade,
+   * so a fresh copy of the benchmark's portfolio is generated (untimed) before every invocation.
+   */
+  @State(Scope.Thread)
+  public static class UnbalancedPortfolio {
+    private IPortfolio portfolio;
+
+    /**
+     * Generate a fresh copy of the benchmark's portfolio.
+     *
+     * @param benchmark the benchmark whose market and store the portfolio is generated from
+     */
+    @Setup(Level.Invocation)
+    public void setUp(PortfolioBenchmark benchmark) {
+      portfolio = benchmark.market.generatePortfolio(benchmark.dataStore, benchmark.lots,
+              PORTFOLIO_SEED);
+    }
+  }
+}
@@ -0,0 +1,125 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import model.stockdatastore.IStockDataStore;
+import model.stockdatastore.StockDataSource;
+
+/**
+ * This class benchmarks the price lookups of the stock data store: single prices, batches of
+ * prices, and market date checks, over markets of 1 to 5,000 tickers.
+ * Every ticker's prices are loaded during the setup, so the benchmarks measure lookups only.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StockDataStoreBenchmark {
+  private static final int QUERY_COUNT = 1 << 12;
+
+  @Param({"1", "100", "5000"})
+  public int tickers;
+
+  @Param({"LocalDataFiles", "BinaryDataFiles"})
+  public StockDataSource dataSource;
+
+  private SyntheticMarket market;
+  private IStockDataStore dataStore;
+  private String[] queryTickers;
+  private LocalDate[] queryDates;
+  private String[] batchTickers;
+  private LocalDate[] batchDates;
+  private int query;
+
+  /**
+   * Create the market and the store, load every ticker, and draw the queried prices.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    market = SyntheticMarket.create(tickers);
+    dataStore = market.newDataStore(dataSource);
+    List<String> marketTickers = market.getTickers();
+    for (String ticker : marketTickers) {
+      dataStore.getStockValue(ticker, SyntheticMarket.LAST_MARKET_DATE);
+    }
+
+    Random random = new Random(42);
+    long dayRange = SyntheticMarket.LAST_MARKET_DATE.toEpochDay()
+            - SyntheticMarket.FIRST_PURCHASE_DATE.toEpochDay();
+    queryTickers = new String[QUERY_COUNT];
+    queryDates = new LocalDate[QUERY_COUNT];
+    for (int i = 0; i < QUERY_COUNT; i++) {
+      queryTickers[i] = marketTickers.get(random.nextInt(marketTickers.size()));
+      queryDates[i] = dataStore.getNextValidMarketDate(SyntheticMarket.FIRST_PURCHASE_DATE
+              .plusDays((long) (random.nextDouble() * dayRange)));
+    }
+
+    // a batch prices every ticker at the end of each of the last twelve months
+    batchTickers = marketTickers.toArray(new String[0]);
+    batchDates = new LocalDate[12];
+    for (int i = 0; i < batchDates.length; i++) {
+      batchDates[i] = dataStore.getPreviousValidMarketDate(
+              SyntheticMarket.LAST_MARKET_DATE.withDayOfMonth(1).minusMonths(i).minusDays(1));
+    }
+  }
+
+  /**
+   * Delete the market's files.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    market.delete();
+  }
+
+  /**
+   * Look up the price of one stock on one date.
+   *
+   * @return the price
+   */
+  @Benchmark
+  public double getStockValue() {
+    int i = query++ & (QUERY_COUNT - 1);
+    return dataStore.getStockValue(queryTickers[i], queryDates[i]);
+  }
+
+  /**
+   * Look up the prices of every stock of the market on twelve dates.
+   *
+   * @return the prices
+   */
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public double[][] getStockValues() {
+    return dataStore.getStockValues(batchTickers, batchDates);
+  }
+
+  /**
+   * Check whether one date is a market date.
+   *
+   * @return true if the date is a market date
+   */
+  @Benchmark
+  public boolean isValidStockMarketDate() {
+    int i = query++ & (QUERY_COUNT - 1);
+    return dataStore.isValidStockMarketDate(queryDates[i].plusDays(i & 1));
+  }
+}
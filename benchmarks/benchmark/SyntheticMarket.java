@@ -0,0 +1,138 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import model.IPortfolio;
+import model.Portfolio;
+import model.Stock;
+import model.stockdatastore.IStockDataStore;
+import model.stockdatastore.StockDataSource;
+import model.stockdatastore.StockDataStore;
+import model.stockdatastore.StockPriceCache;
+
+/**
+ * This class generates the synthetic market and portfolios used by the benchmarks.
+ * A synthetic market is a temporary stock data files directory with the requested number of
+ * tickers. The first tickers are the stocks supported by the local StockDataFiles directory, and
+ * any further tickers (SYN00049, SYN00050, ...) are copies of their data files, so every price
+ * comes from the local files and no benchmark touches the API.
+ * Generated data is deterministic for a given seed.
+ */
+final class SyntheticMarket {
+  static final String LOCAL_STOCK_DATA_FILES = "StockDataFiles";
+  // the first market date on which every local ticker has a price
+  static final LocalDate FIRST_PURCHASE_DATE = LocalDate.of(2019, 1, 2);
+  static final LocalDate LAST_MARKET_DATE = LocalDate.of(2022, 10, 28);
+
+  private final Path directory;
+  private final List<String> tickers;
+
+  private SyntheticMarket(Path directory, List<String> tickers) {
+    this.directory = directory;
+    this.tickers = tickers;
+  }
+
+  /**
+   * Create a synthetic market with the given number of tickers in a temporary directory.
+   *
+   * @param tickerCount the number of tickers in the market
+   * @return the synthetic market
+   */
+  static SyntheticMarket create(int tickerCount) {
+    try {
+      Path localFiles = Paths.get(LOCAL_STOCK_DATA_FILES);
+      List<String> localTickers = Files.readAllLines(
+              localFiles.resolve("supported-stocks-list.txt"), StandardCharsets.UTF_8);
+      localTickers.removeIf(String::isEmpty);
+
+      Path directory = Files.createTempDirectory("stock-benchmark");
+      List<String> tickers = new ArrayList<>();
+      for (int i = 0; i < tickerCount; i++) {
+        String localTicker = localTickers.get(i % localTickers.size());
+        String ticker = i < localTickers.size() ? localTicker : String.format("SYN%05d", i);
+        Files.copy(localFiles.resolve(localTicker + ".csv"), directory.resolve(ticker + ".csv"),
+                StandardCopyOption.REPLACE_EXISTING);
+        tickers.add(ticker);
+      }
+      Files.write(directory.resolve("supported-stocks-list.txt"), tickers,
+              StandardCharsets.UTF_8);
+      return new SyntheticMarket(directory, tickers);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Create a new data store over the local files of this market.
+   *
+   * @param dataSource the data source of the store, LocalDataFiles or BinaryDataFiles
+   * @return the data store
+   */
+  IStockDataStore newDataStore(StockDataSource dataSource) {
+    return new StockDataStore(directory.toFile(), dataSource, null, StockPriceCache.UNBOUNDED);
+  }
+
+  /**
+   * Get the tickers of this market.
+   *
+   * @return the tickers of this market
+   */
+  List<String> getTickers() {
+    return tickers;
+  }
+
+  /**
+   * Generate a portfolio with the given number of lots. Each lot buys a whole number of shares
+   * of a random ticker on a random market date between FIRST_PURCHASE_DATE and
+   * LAST_MARKET_DATE. Lots of the same ticker and date are merged by the portfolio, as they are
+   * when a portfolio file is loaded.
+   *
+   * @param dataStore the data store used for validating the lots
+   * @param lotCount  the number of lots to be bought
+   * @param seed      the seed of the generator
+   * @return the portfolio
+   */
+  IPortfolio generatePortfolio(IStockDataStore dataStore, int lotCount, long seed) {
+    Random random = new Random(seed);
+    long dayRange = LAST_MARKET_DATE.toEpochDay() - FIRST_PURCHASE_DATE.toEpochDay();
+    IPortfolio portfolio = new Portfolio("benchmark");
+    int lots = 0;
+    while (lots < lotCount) {
+      String ticker = tickers.get(random.nextInt(tickers.size()));
+      LocalDate date = dataStore.getNextValidMarketDate(
+              FIRST_PURCHASE_DATE.plusDays((long) (random.nextDouble() * dayRange)));
+      try {
+        portfolio.addStock(dataStore, new Stock(ticker, 1 + random.nextInt(100), date), 0);
+        lots++;
+      } catch (NoSuchElementException e) {
+        // the ticker did not trade on that date, draw another lot
+      }
+    }
+    return portfolio;
+  }
+
+  /**
+   * Delete the directory of this market.
+   */
+  void delete() {
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -102,6 +102,7 @@ public class PortfolioController implements IController {
             break;
 
           case 10:
+            model.flushPortfolioFiles();
             quit = true;
             break;
 
@@ -142,11 +143,10 @@ public class PortfolioController implements IController {
                 DateTimeFormatter.ofPattern("yyyy-MM-dd"));
         try {
           Map<String, Double> sp = new HashMap<>();
-          DateTimeFormatter ff = DateTimeFormatter.ofPattern("yyyy-MM-dd");
           Map<String, Double> stockData = new HashMap<>();
           String stockNames = "";
           for (IStock is : model.getStockFromPortfolio(pfNames.get(portfolioNumber - 1))) {
-            if (LocalDate.parse(is.getPurchaseDate(), ff).compareTo(compositionDate) <= 0) {
+            if (!is.getPurchaseDate().isAfter(compositionDate)) {
               if (stockData.containsKey(is.getStockName())) {
                 stockData.put(is.getStockName(), stockData.get(is.getStockName())
                         + is.getStockQuantity());
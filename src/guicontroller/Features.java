@@ -199,4 +199,10 @@ public interface Features {
    * @param portfolioName portfolio name.
    */
   void getStocksOfPortfolio(String portfolioName);
+
+  /**
+   * This method is called when the user exits the program, from the menu or by closing the
+   * window. The changes made to the portfolios are made durable before the program exits.
+   */
+  void exitProgram();
 }
@@ -54,6 +54,12 @@ public class GUIController implements Features {
     view.getCommissionFee();
   }
 
+  @Override
+  public void exitProgram() {
+    model.flushPortfolioFiles();
+    System.exit(0);
+  }
+
   @Override
   public void notRetrievingPortfolio() {
     model.deleteAllPortfolioFiles();
@@ -565,14 +571,13 @@ public class GUIController implements Features {
     }
     Map<String, Double> stockData = new HashMap<>();
     String stockNames = "";
-    DateTimeFormatter ff = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     getDate();
     if (compositionDate.compareTo(LocalDate.now()) > 0) {
       view.showDialogBox("Date cannot be in the future");
       return;
     }
     for (IStock is : model.getStockFromPortfolio(portfolioName)) {
-      if (LocalDate.parse(is.getPurchaseDate(), ff).compareTo(compositionDate) <= 0) {
+      if (!is.getPurchaseDate().isAfter(compositionDate)) {
         if (stockData.containsKey(is.getStockName())) {
           stockData.put(is.getStockName(), stockData.get(is.getStockName())
                   + is.getStockQuantity());
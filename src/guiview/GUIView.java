@@ -10,6 +10,8 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.FileDialog;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 
 import java.text.MessageFormat;
 import java.time.LocalDate;
@@ -128,7 +130,8 @@ public class GUIView extends JFrame implements IGUIView {
 
     setSize(700, 300);
     setLocation(200, 200);
-    setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+    // closing the window exits through the controller, like the exit menu item
+    setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
 
     //Initializing the components that will be used later.
     panel = new JPanel();
@@ -239,7 +242,13 @@ public class GUIView extends JFrame implements IGUIView {
   public void addFeatures(Features features) {
     yes.addActionListener(e -> features.retrieveExistingPortfolio());
     no.addActionListener(e -> features.notRetrievingPortfolio());
-    exit.addActionListener(e -> System.exit(0));
+    exit.addActionListener(e -> features.exitProgram());
+    addWindowListener(new WindowAdapter() {
+      @Override
+      public void windowClosing(WindowEvent e) {
+        features.exitProgram();
+      }
+    });
     createNewPortfolio.addActionListener(e -> features.inputsForCreatingNewPortfolio());
     createPortfolioButton.addActionListener(e -> features.createPortfolio());
     selectPortfolioFileButton.addActionListener(e -> features.portfolioFileInput());
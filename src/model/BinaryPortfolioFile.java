@@ -0,0 +1,179 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * The BinaryPortfolioFile final class provides static helper methods for the binary portfolio
+ * snapshot format, which is a compact alternative to a portfolio's CSV file and cost basis file,
+ * holding both in a single file.
+ * A binary portfolio file starts with a fixed size header (magic number, format version, number
+ * of tickers, stocks and cost basis dates, and a CRC-32 checksum of the rest of the file). It is
+ * followed by the ticker dictionary, then by the stocks in the portfolio's order as a ticker id,
+ * the difference between the stock's purchase date and the previous stock's purchase date (in
+ * days), and the quantity in quantity units. The cost basis comes last, in ascending order of
+ * date, as the difference from the previous date and the amount. Every integer after the header
+ * is written as a variable length (zigzag) number, so that small values take a single byte.
+ */
+final class BinaryPortfolioFile {
+  /**
+   * The file extension of binary portfolio files.
+   */
+  static final String FILE_EXTENSION = ".pfs";
+
+  static final int MAGIC = 0x50465331; // "PFS1"
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 24;
+  static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+  private BinaryPortfolioFile() {
+  }
+
+  /**
+   * Encode the given stocks and cost basis of a portfolio in the binary portfolio file format.
+   *
+   * @param stocks       the stocks of the portfolio, in the portfolio's order
+   * @param costBasisMap the map from each date to the amount invested on that date
+   * @return the contents of the binary portfolio file
+   */
+  static ByteBuffer encode(List<IStock> stocks, Map<LocalDate, Double> costBasisMap) {
+    Map<String, Integer> tickerIds = new LinkedHashMap<>();
+    for (IStock stock : stocks) {
+      tickerIds.putIfAbsent(stock.getStockName(), tickerIds.size());
+    }
+    List<byte[]> tickers = new ArrayList<>(tickerIds.size());
+    int tickerBytes = 0;
+    for (String ticker : tickerIds.keySet()) {
+      byte[] bytes = ticker.getBytes(StandardCharsets.UTF_8);
+      tickers.add(bytes);
+      tickerBytes += 5 + bytes.length;
+    }
+
+    // every variable length number takes at most 10 bytes
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + tickerBytes + stocks.size() * 30
+            + costBasisMap.size() * 18).order(BYTE_ORDER);
+    buffer.position(HEADER_SIZE);
+    for (byte[] ticker : tickers) {
+      putVarLong(buffer, ticker.length);
+      buffer.put(ticker);
+    }
+    long previousDay = 0;
+    for (IStock stock : stocks) {
+      long day = stock.getPurchaseDate().toEpochDay();
+      putVarLong(buffer, tickerIds.get(stock.getStockName()));
+      putVarLong(buffer, day - previousDay);
+      putVarLong(buffer, stock.getQuantityUnits());
+      previousDay = day;
+    }
+    previousDay = 0;
+    for (Map.Entry<LocalDate, Double> entry : new TreeMap<>(costBasisMap).entrySet()) {
+      long day = entry.getKey().toEpochDay();
+      putVarLong(buffer, day - previousDay);
+      buffer.putDouble(entry.getValue());
+      previousDay = day;
+    }
+    buffer.flip();
+
+    CRC32 checksum = new CRC32();
+    checksum.update(buffer.duplicate().position(HEADER_SIZE));
+    buffer.putInt(0, MAGIC)
+            .putInt(4, VERSION)
+            .putInt(8, tickers.size())
+            .putInt(12, stocks.size())
+            .putInt(16, costBasisMap.size())
+            .putInt(20, (int) checksum.getValue());
+    return buffer;
+  }
+
+  /**
+   * Read the given binary portfolio file with a single bulk read, adding its stocks and its cost
+   * basis to the given collections.
+   *
+   * @param binaryPortfolioFile the binary portfolio file to be read
+   * @param stocks              the list to which the stocks are added, in the portfolio's order
+   * @param costBasisMap        the map to which the cost basis amounts are added
+   * @throws IOException if the file could not be read, or if it is not a valid binary portfolio
+   *                     file of this version
+   */
+  static void read(File binaryPortfolioFile,
+                   List<IStock> stocks,
+                   Map<LocalDate, Double> costBasisMap) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(binaryPortfolioFile.toPath()))
+            .order(BYTE_ORDER);
+    if (buffer.limit() < HEADER_SIZE
+            || buffer.getInt(0) != MAGIC
+            || buffer.getInt(4) != VERSION) {
+      throw new InvalidObjectException("The file " + binaryPortfolioFile.getPath()
+              + " is not a valid binary portfolio file.");
+    }
+    CRC32 checksum = new CRC32();
+    checksum.update(buffer.duplicate().position(HEADER_SIZE));
+    if (buffer.getInt(20) != (int) checksum.getValue()) {
+      throw new InvalidObjectException("The binary portfolio file "
+              + binaryPortfolioFile.getPath() + " is corrupted.");
+    }
+
+    try {
+      int tickerCount = buffer.getInt(8);
+      int stockCount = buffer.getInt(12);
+      int costBasisCount = buffer.getInt(16);
+      buffer.position(HEADER_SIZE);
+
+      String[] tickers = new String[tickerCount];
+      for (int i = 0; i < tickerCount; i++) {
+        byte[] bytes = new byte[(int) getVarLong(buffer)];
+        buffer.get(bytes);
+        tickers[i] = new String(bytes, StandardCharsets.UTF_8);
+      }
+      long day = 0;
+      for (int i = 0; i < stockCount; i++) {
+        String ticker = tickers[(int) getVarLong(buffer)];
+        day += getVarLong(buffer);
+        stocks.add(Stock.ofQuantityUnits(ticker, getVarLong(buffer), LocalDate.ofEpochDay(day)));
+      }
+      day = 0;
+      for (int i = 0; i < costBasisCount; i++) {
+        day += getVarLong(buffer);
+        costBasisMap.merge(LocalDate.ofEpochDay(day), buffer.getDouble(), Double::sum);
+      }
+    } catch (BufferUnderflowException | IndexOutOfBoundsException
+             | NegativeArraySizeException e) {
+      throw new InvalidObjectException("The binary portfolio file "
+              + binaryPortfolioFile.getPath() + " is truncated.");
+    }
+  }
+
+  private static void putVarLong(ByteBuffer buffer, long value) {
+    long zigzag = (value << 1) ^ (value >> 63);
+    while ((zigzag & ~0x7FL) != 0) {
+      buffer.put((byte) ((zigzag & 0x7F) | 0x80));
+      zigzag >>>= 7;
+    }
+    buffer.put((byte) zigzag);
+  }
+
+  private static long getVarLong(ByteBuffer buffer) {
+    long zigzag = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = buffer.get();
+      zigzag |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return (zigzag >>> 1) ^ -(zigzag & 1);
+  }
+}
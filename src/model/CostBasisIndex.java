@@ -0,0 +1,115 @@
+package model;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The CostBasisIndex class holds the cost basis amounts of a portfolio by date. The dates are
+ * kept in ascending order together with a running (prefix) sum of the amounts, so the cost basis
+ * on any date is found with a binary search instead of a scan over every date.
+ * Amounts are usually added in date order, which only appends to the index. When an amount is
+ * added on or before an existing date, the prefix sums from that date onwards are recomputed
+ * lazily, by the next query that needs them.
+ * Dates are represented as epoch days (the number of days since 1970-01-01).
+ */
+class CostBasisIndex {
+  private int[] days;
+  private double[] amounts;
+  private double[] prefixSums;
+  private int size;
+  private int validPrefixSums;
+
+  /**
+   * Create a new, empty CostBasisIndex.
+   */
+  CostBasisIndex() {
+    this.days = new int[16];
+    this.amounts = new double[16];
+    this.prefixSums = new double[16];
+  }
+
+  /**
+   * Add the given amount to the cost basis on the given date.
+   *
+   * @param date   the date on which the amount is invested
+   * @param amount the amount invested
+   */
+  void add(LocalDate date, double amount) {
+    int day = (int) date.toEpochDay();
+    int index = Arrays.binarySearch(days, 0, size, day);
+    if (index < 0) {
+      index = -index - 1;
+      if (size == days.length) {
+        days = Arrays.copyOf(days, size * 2);
+        amounts = Arrays.copyOf(amounts, size * 2);
+        prefixSums = Arrays.copyOf(prefixSums, size * 2);
+      }
+      System.arraycopy(days, index, days, index + 1, size - index);
+      System.arraycopy(amounts, index, amounts, index + 1, size - index);
+      days[index] = day;
+      amounts[index] = 0;
+      size++;
+    }
+    amounts[index] += amount;
+    validPrefixSums = Math.min(validPrefixSums, index);
+  }
+
+  /**
+   * Remove every amount from this index.
+   */
+  void clear() {
+    size = 0;
+    validPrefixSums = 0;
+  }
+
+  /**
+   * Get the cost basis on the given date, that is, the sum of the amounts added on or before
+   * the date.
+   *
+   * @param date the date for which the cost basis is required
+   * @return the cost basis on the given date
+   */
+  double getCostBasis(LocalDate date) {
+    int index = Arrays.binarySearch(days, 0, size, (int) date.toEpochDay());
+    if (index < 0) {
+      index = -index - 2;
+    }
+    if (index < 0) {
+      return 0;
+    }
+
+    // bring the prefix sums up to date as far as this query needs them
+    for (int i = validPrefixSums; i <= index; i++) {
+      prefixSums[i] = (i > 0 ? prefixSums[i - 1] : 0) + amounts[i];
+    }
+    validPrefixSums = Math.max(validPrefixSums, index + 1);
+    return prefixSums[index];
+  }
+
+  /**
+   * Get the amounts of this index by date, in ascending order of date.
+   *
+   * @return a new map from each date to the amount invested on that date
+   */
+  LinkedHashMap<LocalDate, Double> toMap() {
+    LinkedHashMap<LocalDate, Double> costBasisMap = new LinkedHashMap<>();
+    for (int i = 0; i < size; i++) {
+      costBasisMap.put(LocalDate.ofEpochDay(days[i]), amounts[i]);
+    }
+    return costBasisMap;
+  }
+
+  /**
+   * Replace the amounts of this index with the amounts of the given map.
+   *
+   * @param costBasisMap the map from each date to the amount invested on that date
+   */
+  void putAll(Map<LocalDate, Double> costBasisMap) {
+    clear();
+    for (Map.Entry<LocalDate, Double> entry : costBasisMap.entrySet()) {
+      add(entry.getKey(), entry.getValue());
+    }
+  }
+}
@@ -0,0 +1,383 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
+/**
+ * The CsvRecordReader class reads comma separated records from a character stream, one record at
+ * a time, and provides typed access to the fields of the current record.
+ * The reader works directly on its character buffer: the fields of a record are only located
+ * while reading the record, and they are converted to ints, doubles and dates on demand, without
+ * creating an intermediate string for every line or field. Leading and trailing whitespace of a
+ * field is ignored.
+ * This reader is used for the stock data files, the stock data API output, the portfolio files
+ * and the cost basis files.
+ */
+public class CsvRecordReader implements Closeable {
+  private static final char delimiter = ',';
+  private static final int initialBufferSize = 1 << 16;
+  private static final DateTimeFormatter dateFormatter = DateTimeFormatter
+          .ofPattern(Stock.STOCK_PURCHASE_DATE_FORMAT);
+  private static final double[] exactPowersOfTen = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+  private static final float[] exactFloatPowersOfTen = {
+      1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+  };
+
+  private final Reader reader;
+  private char[] buffer;
+  private int bufferLimit;
+  private int recordStart;
+  private int recordEnd;
+  private boolean endOfStream;
+  private int fieldCount;
+  private int[] fieldStarts;
+  private int[] fieldEnds;
+
+  /**
+   * Create a new CsvRecordReader over the given character stream.
+   *
+   * @param reader the character stream to be read
+   */
+  public CsvRecordReader(Reader reader) {
+    this.reader = reader;
+    this.buffer = new char[initialBufferSize];
+    this.fieldStarts = new int[8];
+    this.fieldEnds = new int[8];
+  }
+
+  /**
+   * Advance to the next record (line) of the stream.
+   *
+   * @return true if a record was read, false if the end of the stream was reached
+   * @throws IOException if the stream could not be read
+   */
+  public boolean nextRecord() throws IOException {
+    int position = skipLineTerminator(recordEnd);
+    while (true) {
+      int lineEnd = findLineEnd(position);
+      if (lineEnd >= 0) {
+        splitRecord(position, lineEnd);
+        return true;
+      }
+      if (endOfStream) {
+        if (position < bufferLimit) {
+          splitRecord(position, bufferLimit);
+          return true;
+        }
+        recordStart = bufferLimit;
+        recordEnd = bufferLimit;
+        fieldCount = 0;
+        return false;
+      }
+      position = fill(position);
+    }
+  }
+
+  /**
+   * Get the number of fields in the current record. As with String.split, trailing empty fields
+   * are not counted, and an empty record has a single (empty) field.
+   *
+   * @return the number of fields in the current record
+   */
+  public int getFieldCount() {
+    int count = fieldCount;
+    while (count > 1 && fieldStarts[count - 1] == fieldEnds[count - 1]) {
+      count--;
+    }
+    return count;
+  }
+
+  /**
+   * Check if the current record is an empty line.
+   *
+   * @return true if the current record contains no characters, false otherwise
+   */
+  public boolean isEmptyRecord() {
+    return recordStart == recordEnd;
+  }
+
+  /**
+   * Get the given field of the current record as a string.
+   *
+   * @param field the position of the field in the record, starting at 0
+   * @return the trimmed field value
+   */
+  public String getString(int field) {
+    checkField(field);
+    return new String(buffer, fieldStarts[field], fieldEnds[field] - fieldStarts[field]);
+  }
+
+  /**
+   * Get the given field of the current record as a double value. The value is the same as the
+   * one returned by Double.parseDouble for the field.
+   *
+   * @param field the position of the field in the record, starting at 0
+   * @return the field value as a double
+   * @throws NumberFormatException if the field is not a valid number
+   */
+  public double getDouble(int field) throws NumberFormatException {
+    checkField(field);
+    int start = fieldStarts[field];
+    int end = fieldEnds[field];
+    boolean negative = start < end && buffer[start] == '-';
+    int position = negative ? start + 1 : start;
+    long mantissa = 0;
+    int digits = 0;
+    int fractionDigits = -1;
+    for (; position < end; position++) {
+      char c = buffer[position];
+      if (c >= '0' && c <= '9') {
+        mantissa = mantissa * 10 + (c - '0');
+        digits++;
+        if (fractionDigits >= 0) {
+          fractionDigits++;
+        }
+      } else if (c == '.' && fractionDigits < 0) {
+        fractionDigits = 0;
+      } else {
+        break;
+      }
+    }
+
+    // a decimal with at most 15 digits is exact as a double, and so is a power of ten up to
+    // 10^22, hence their quotient is correctly rounded, as with Double.parseDouble
+    if (position == end && digits > 0 && digits <= 15
+            && fractionDigits < exactPowersOfTen.length) {
+      double value = fractionDigits > 0
+              ? mantissa / exactPowersOfTen[fractionDigits]
+              : mantissa;
+      return negative ? -value : value;
+    }
+    return Double.parseDouble(getString(field));
+  }
+
+  /**
+   * Get the given field of the current record as a float value. The value is the same as the
+   * one returned by Float.parseFloat for the field.
+   *
+   * @param field the position of the field in the record, starting at 0
+   * @return the field value as a float
+   * @throws NumberFormatException if the field is not a valid number
+   */
+  public float getFloat(int field) throws NumberFormatException {
+    checkField(field);
+    int start = fieldStarts[field];
+    int end = fieldEnds[field];
+    boolean negative = start < end && buffer[start] == '-';
+    int position = negative ? start + 1 : start;
+    int mantissa = 0;
+    int digits = 0;
+    int fractionDigits = -1;
+    for (; position < end; position++) {
+      char c = buffer[position];
+      if (c >= '0' && c <= '9') {
+        mantissa = mantissa * 10 + (c - '0');
+        digits++;
+        if (fractionDigits >= 0) {
+          fractionDigits++;
+        }
+      } else if (c == '.' && fractionDigits < 0) {
+        fractionDigits = 0;
+      } else {
+        break;
+      }
+    }
+
+    // a decimal with at most 7 digits is exact as a float, and so is a power of ten up to 10^10
+    if (position == end && digits > 0 && digits <= 7
+            && fractionDigits < exactFloatPowersOfTen.length) {
+      float value = fractionDigits > 0
+              ? mantissa / exactFloatPowersOfTen[fractionDigits]
+              : mantissa;
+      return negative ? -value : value;
+    }
+    return Float.parseFloat(getString(field));
+  }
+
+  /**
+   * Get the given field of the current record, a date in the format yyyy-MM-dd, as an epoch day.
+   * The date is interpreted in the same way as LocalDate.parse with the stock purchase date
+   * format.
+   *
+   * @param field the position of the field in the record, starting at 0
+   * @return the date as an epoch day
+   * @throws DateTimeParseException if the field is not a date in the format yyyy-MM-dd
+   */
+  public int getEpochDay(int field) throws DateTimeParseException {
+    checkField(field);
+    int start = fieldStarts[field];
+    if (fieldEnds[field] - start == 10
+            && buffer[start + 4] == '-'
+            && buffer[start + 7] == '-') {
+      int year = parseDigits(start, 4);
+      int month = parseDigits(start + 5, 2);
+      int day = parseDigits(start + 8, 2);
+      if (year >= 1 && month >= 1 && month <= 12 && day >= 1
+              && day <= lengthOfMonth(year, month)) {
+        return daysFromCivil(year, month, day);
+      }
+    }
+    return (int) LocalDate.parse(getString(field), dateFormatter).toEpochDay();
+  }
+
+  /**
+   * Check if the given field of the current record is a positive whole number, optionally
+   * followed by a decimal point and zeros (for example 10 or 10.00).
+   *
+   * @param field the position of the field in the record, starting at 0
+   * @return true if the field is a positive whole number, false otherwise
+   */
+  public boolean isWholeNumber(int field) {
+    checkField(field);
+    int position = fieldStarts[field];
+    int end = fieldEnds[field];
+    if (position == end || buffer[position] < '1' || buffer[position] > '9') {
+      return false;
+    }
+    while (position < end && buffer[position] >= '0' && buffer[position] <= '9') {
+      position++;
+    }
+    if (position == end) {
+      return true;
+    }
+    if (buffer[position] != '.' || position + 1 == end) {
+      return false;
+    }
+    for (position++; position < end; position++) {
+      if (buffer[position] != '0') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+  private void checkField(int field) {
+    if (field < 0 || field >= fieldCount) {
+      throw new IllegalArgumentException("The record does not contain field " + field);
+    }
+  }
+
+  private int skipLineTerminator(int position) {
+    if (position < bufferLimit && buffer[position] == '\r') {
+      position++;
+    }
+    if (position < bufferLimit && buffer[position] == '\n') {
+      position++;
+    }
+    return position;
+  }
+
+  private int findLineEnd(int position) {
+    for (int i = position; i < bufferLimit; i++) {
+      char c = buffer[i];
+      if (c == '\n' || c == '\r') {
+        // a '\r' at the end of the buffer may be followed by a '\n' that is not read yet
+        if (c == '\r' && i + 1 == bufferLimit && !endOfStream) {
+          return -1;
+        }
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private int fill(int position) throws IOException {
+    // move the unfinished record to the start of the buffer, and grow the buffer if the record
+    // does not leave any room for more characters
+    int remaining = bufferLimit - position;
+    if (remaining == buffer.length) {
+      buffer = Arrays.copyOf(buffer, buffer.length * 2);
+    } else if (position > 0) {
+      System.arraycopy(buffer, position, buffer, 0, remaining);
+    }
+    bufferLimit = remaining;
+
+    int read = reader.read(buffer, bufferLimit, buffer.length - bufferLimit);
+    if (read < 0) {
+      endOfStream = true;
+    } else {
+      bufferLimit += read;
+    }
+    return 0;
+  }
+
+  private void splitRecord(int start, int end) {
+    recordStart = start;
+    recordEnd = end;
+    fieldCount = 0;
+    int fieldStart = start;
+    for (int i = start; i <= end; i++) {
+      if (i == end || buffer[i] == delimiter) {
+        addField(fieldStart, i);
+        fieldStart = i + 1;
+      }
+    }
+  }
+
+  private void addField(int start, int end) {
+    if (fieldCount == fieldStarts.length) {
+      fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+      fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+    }
+    while (start < end && Character.isWhitespace(buffer[start])) {
+      start++;
+    }
+    while (end > start && Character.isWhitespace(buffer[end - 1])) {
+      end--;
+    }
+    fieldStarts[fieldCount] = start;
+    fieldEnds[fieldCount] = end;
+    fieldCount++;
+  }
+
+  private int parseDigits(int start, int length) {
+    int value = 0;
+    for (int i = start; i < start + length; i++) {
+      char c = buffer[i];
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      value = value * 10 + (c - '0');
+    }
+    return value;
+  }
+
+  private static int lengthOfMonth(int year, int month) {
+    switch (month) {
+      case 2:
+        boolean leapYear = (year % 4 == 0) && (year % 100 != 0 || year % 400 == 0);
+        return leapYear ? 29 : 28;
+      case 4:
+      case 6:
+      case 9:
+      case 11:
+        return 30;
+      default:
+        return 31;
+    }
+  }
+
+  private static int daysFromCivil(int year, int month, int day) {
+    // days since 1970-01-01 in the proleptic Gregorian calendar, computed over 400 year eras
+    // that start on March 1st, so that the leap day is the last day of an era's year
+    int y = month <= 2 ? year - 1 : year;
+    int era = Math.floorDiv(y, 400);
+    int yearOfEra = y - era * 400;
+    int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+    int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097 + dayOfEra - 719468;
+  }
+}
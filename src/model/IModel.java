@@ -9,6 +9,7 @@ import java.text.ParseException;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 /**
  * This interface represents the signature of a model class that can perform various I/O operations
@@ -67,6 +68,23 @@ public interface IModel {
   double getPortfolioValue(String portfolioName, LocalDate date)
           throws IndexOutOfBoundsException;
 
+  /**
+   * Get the entire values of the given portfolios on each of the given dates in the stock market.
+   * The result is a matrix with one row per portfolio and one column per date, in the order in
+   * which they are given. The values are computed in parallel, across all the available
+   * processors.
+   *
+   * @param portfolioNames the names of the portfolios whose values are to be calculated
+   * @param dates          the market dates for which the portfolios' values are to be calculated
+   * @return the portfolio values, where the value at [i][j] is the value of portfolio i on date j
+   * @throws IllegalArgumentException if any of the given portfolios does not exist, or if any of
+   *                                  the given dates is a future date
+   * @throws NoSuchElementException   if the price of a stock in a portfolio is not available on
+   *                                  one of the given dates
+   */
+  double[][] getPortfolioValues(String[] portfolioNames, LocalDate[] dates)
+          throws IllegalArgumentException, NoSuchElementException;
+
   /**
    * Examine a specific portfolio from the list of existing portfolios by simply returning
    * the list of stocks present in the portfolio.
@@ -111,6 +129,12 @@ public interface IModel {
    */
   void retrieveExistingPortfolios();
 
+  /**
+   * Make every change made to the portfolios so far durable, by syncing the portfolio files that
+   * are still pending to the storage device.
+   */
+  void flushPortfolioFiles();
+
   /**
    * This method sets the initial commission fee and reduction percentage.
    *
@@ -209,6 +233,29 @@ public interface IModel {
                                                         LocalDate endDate)
           throws IllegalArgumentException;
 
+  /**
+   * Get a given portfolio's value over a given time span as a time series, given the start date
+   * and the end date of the span, the step of the series, and how the values within a step are
+   * aggregated.
+   *
+   * @param portfolioName the name of the portfolio
+   * @param startDate     the start date of the series
+   * @param endDate       the end date of the series
+   * @param step          the step of the series
+   * @param aggregation   how the values of the trading days in a step are aggregated
+   * @return the portfolio's value over the given time span as a time series
+   * @throws IllegalArgumentException if the given start or end date is a future date,
+   *                                  or if the given start date comes after the end date,
+   *                                  or if the start/end date is not supported by the application,
+   *                                  or if the given portfolio does not exist
+   */
+  IPortfolioTimeSeries getPortfolioPerformanceSeries(String portfolioName,
+                                                     LocalDate startDate,
+                                                     LocalDate endDate,
+                                                     PerformanceStep step,
+                                                     PerformanceAggregation aggregation)
+          throws IllegalArgumentException;
+
   /**
    * Get the list of all stocks in a given portfolio.
    *
@@ -242,6 +289,8 @@ public interface IModel {
    * @param numberOfDays       the number of days (interval) after which money is to be invested
    * @param stockProportions   the map containing the percentages/proportions of each stock to be
    *                           invested into the portfolio over the intervals
+   * @throws IllegalArgumentException if the start date is on or after the end date, or if a
+   *                                  portfolio with the given name already exists
    */
   void createPortfolioWithDollarCostAveraging(String portfolioName,
                                               float amountToBeInvested,
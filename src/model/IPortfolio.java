@@ -37,8 +37,10 @@ public interface IPortfolio {
    * will be added to the existing stock list of the portfolio.
    *
    * @param stock the stock to be added to the portfolio
+   * @return the amount added to the portfolio's cost basis on the stock's purchase date, which is
+   *         the stock's price plus the commission fee, or 0 for a duplicate stock
    */
-  void addStock(IStockDataStore dataStore, IStock stock, float commissionFee);
+  double addStock(IStockDataStore dataStore, IStock stock, float commissionFee);
 
   /**
    * Get the list of stocks in this portfolio.
@@ -67,6 +69,7 @@ public interface IPortfolio {
   /**
    * This method gets the cost basis map containing cost basis
    * value of a stock on a particular date of a portfolio.
+   * The map is a copy, with its dates in ascending order.
    *
    * @return cost basis map
    */
@@ -99,6 +102,8 @@ public interface IPortfolio {
    * Get the portfolio's performance data over a given time span, given the start date and the end
    * date of the performance duration. The data store specifies the repository/database of the stock
    * value data.
+   * Each data frame holds the value of the stocks purchased on or before the frame's date. A date
+   * on which the market is closed is valued at the latest prices before it.
    *
    * @param startDate the start date calculating the portfolio's performance
    * @param endDate   the end date calculating the portfolio's performance
@@ -108,4 +113,24 @@ public interface IPortfolio {
   IPortfolioPerformanceData getPerformanceData(LocalDate startDate,
                                                LocalDate endDate,
                                                IStockDataStore dataStore);
+
+  /**
+   * Get the portfolio's value over a given time span as a time series, given the start date and
+   * the end date of the span, the step of the series, and how the values within a step are
+   * aggregated. Every trading day in the span is valued, and the trading days are grouped into
+   * the steps of the series. Each point of the series is dated on the last trading day of its
+   * step.
+   *
+   * @param startDate   the start date of the series
+   * @param endDate     the end date of the series
+   * @param step        the step of the series
+   * @param aggregation how the values of the trading days in a step are aggregated
+   * @param dataStore   the data store containing all the stock price information
+   * @return the portfolio's value over the given time span as a time series
+   */
+  IPortfolioTimeSeries getPerformanceSeries(LocalDate startDate,
+                                            LocalDate endDate,
+                                            PerformanceStep step,
+                                            PerformanceAggregation aggregation,
+                                            IStockDataStore dataStore);
 }
@@ -0,0 +1,62 @@
+package model;
+
+import java.time.LocalDate;
+
+/**
+ * This interface represents a portfolio's value over a range of time as a time series of
+ * primitive values, with one point per step of the series. Each point has a date (the last
+ * trading day of its step), held as an epoch day, and the portfolio's value for the step.
+ */
+public interface IPortfolioTimeSeries {
+  /**
+   * Get the name of the portfolio whose value is represented by this series.
+   *
+   * @return the portfolio's name
+   */
+  String getPortfolioName();
+
+  /**
+   * Get the number of points in this series.
+   *
+   * @return the number of points in this series
+   */
+  int size();
+
+  /**
+   * Get the date of the point at the given position in this series, as an epoch day.
+   *
+   * @param index the position of the point, between 0 and size() - 1
+   * @return the date of the point as an epoch day
+   */
+  int getEpochDay(int index);
+
+  /**
+   * Get the date of the point at the given position in this series.
+   *
+   * @param index the position of the point, between 0 and size() - 1
+   * @return the date of the point
+   */
+  LocalDate getDate(int index);
+
+  /**
+   * Get the portfolio's value at the given position in this series.
+   *
+   * @param index the position of the point, between 0 and size() - 1
+   * @return the portfolio's value for the point
+   */
+  double getValue(int index);
+
+  /**
+   * Get the dates of all the points of this series, as epoch days.
+   *
+   * @return a new array containing the date of every point in order
+   */
+  int[] getEpochDays();
+
+  /**
+   * Get the portfolio's values at all the points of this series.
+   *
+   * @return a new array containing the value of every point in order
+   */
+  double[] getValues();
+}
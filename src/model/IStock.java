@@ -1,5 +1,7 @@
 package model;
 
+import java.time.LocalDate;
+
 /**
  * This interface represents a stock in the stock market.
  * A stock can have basic properties like a stock ticker symbol, quantity of stock, and
@@ -17,16 +19,24 @@ public interface IStock {
   /**
    * Get the quantity of the stock.
    *
-   * @return the quantity of stock as a long integer
+   * @return the quantity of stock as a float
    */
   float getStockQuantity();
 
+  /**
+   * Get the exact quantity of the stock, as a whole number of quantity units. A quantity unit
+   * is 1 / Stock.QUANTITY_SCALE of a share, so quantities can be added without rounding errors.
+   *
+   * @return the quantity of stock in quantity units
+   */
+  long getQuantityUnits();
+
   /**
    * Get the purchase date of the stock.
    *
-   * @return the purchase date of the stock as string
+   * @return the purchase date of the stock
    */
-  String getPurchaseDate();
+  LocalDate getPurchaseDate();
 
   /**
    * Get the stock data in CSV format as a string. The format is as follows:
@@ -0,0 +1,11 @@
+package model;
+
+/**
+ * This enumeration contains the ways in which the portfolio values of the trading days in one
+ * step of a performance time series are aggregated into the single value of that step.
+ */
+public enum PerformanceAggregation {
+  MIN,
+  MAX,
+  LAST
+}
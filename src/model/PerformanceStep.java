@@ -0,0 +1,119 @@
+package model;
+
+import java.time.LocalDate;
+
+/**
+ * This class represents the step (resolution) of a portfolio's performance time series. A step
+ * divides the trading days of the series into consecutive buckets, and the series has one point
+ * per bucket. A step is either a fixed number of trading days, or a calendar period: a week
+ * (Monday to Sunday), a month, a quarter or a year.
+ */
+public final class PerformanceStep {
+  private enum Period {
+    TRADING_DAYS,
+    WEEK,
+    MONTH,
+    QUARTER,
+    YEAR
+  }
+
+  private static final PerformanceStep DAILY = new PerformanceStep(Period.TRADING_DAYS, 1);
+  private static final PerformanceStep WEEKLY = new PerformanceStep(Period.WEEK, 1);
+  private static final PerformanceStep MONTHLY = new PerformanceStep(Period.MONTH, 1);
+  private static final PerformanceStep QUARTERLY = new PerformanceStep(Period.QUARTER, 1);
+  private static final PerformanceStep YEARLY = new PerformanceStep(Period.YEAR, 1);
+
+  private final Period period;
+  private final int tradingDays;
+
+  private PerformanceStep(Period period, int tradingDays) {
+    this.period = period;
+    this.tradingDays = tradingDays;
+  }
+
+  /**
+   * Get the step of one trading day, which gives a point for every trading day.
+   *
+   * @return the daily step
+   */
+  public static PerformanceStep daily() {
+    return DAILY;
+  }
+
+  /**
+   * Get the step of the given number of trading days.
+   *
+   * @param tradingDays the number of trading days in every bucket
+   * @return the step of the given number of trading days
+   * @throws IllegalArgumentException if the number of trading days is not positive
+   */
+  public static PerformanceStep tradingDays(int tradingDays) throws IllegalArgumentException {
+    if (tradingDays <= 0) {
+      throw new IllegalArgumentException("The number of trading days in a step must be "
+              + "positive.");
+    }
+    return tradingDays == 1 ? DAILY : new PerformanceStep(Period.TRADING_DAYS, tradingDays);
+  }
+
+  /**
+   * Get the step of one calendar week, from Monday to Sunday.
+   *
+   * @return the weekly step
+   */
+  public static PerformanceStep weekly() {
+    return WEEKLY;
+  }
+
+  /**
+   * Get the step of one calendar month.
+   *
+   * @return the monthly step
+   */
+  public static PerformanceStep monthly() {
+    return MONTHLY;
+  }
+
+  /**
+   * Get the step of one calendar quarter.
+   *
+   * @return the quarterly step
+   */
+  public static PerformanceStep quarterly() {
+    return QUARTERLY;
+  }
+
+  /**
+   * Get the step of one calendar year.
+   *
+   * @return the yearly step
+   */
+  public static PerformanceStep yearly() {
+    return YEARLY;
+  }
+
+  /**
+   * Get the bucket of the given trading day. Consecutive trading days that share a bucket are
+   * aggregated into the same point of a series.
+   *
+   * @param epochDay        the trading day, as an epoch day
+   * @param tradingDayIndex the position of the trading day in the series
+   * @return a number identifying the bucket of the trading day
+   */
+  long getBucket(int epochDay, int tradingDayIndex) {
+    switch (period) {
+      case TRADING_DAYS:
+        return tradingDayIndex / tradingDays;
+      case WEEK:
+        // the epoch day 0 (1970-01-01) is a Thursday, so weeks starting on Monday are offset by 3
+        return Math.floorDiv(epochDay + 3, 7);
+      case MONTH:
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        return date.getYear() * 12L + date.getMonthValue();
+      case QUARTER:
+        LocalDate quarterDate = LocalDate.ofEpochDay(epochDay);
+        return quarterDate.getYear() * 4L + (quarterDate.getMonthValue() - 1) / 3;
+      default:
+        return LocalDate.ofEpochDay(epochDay).getYear();
+    }
+  }
+}
@@ -8,23 +8,31 @@ import java.time.temporal.ChronoField;
 import java.time.temporal.ChronoUnit;
 import java.time.temporal.TemporalAdjusters;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.stream.Collectors;
 
 import model.stockdatastore.IStockDataStore;
+import model.stockdatastore.TickerSymbolTable;
 
 /**
  * The Portfolio class is an implementation of the IPortfolio interface.
  * This class represents a stock portfolio, and provides operations on a stock portfolio like
  * 'getting the portfolio's name', 'adding a stock to the portfolio', and 'getting the portfolio's
  * market value on a given date'.
+ * Besides its list of stocks, a portfolio keeps a position ledger, which holds the running
+ * quantity of each ticker by purchase date, so that the portfolio's holdings on a date are
+ * found without scanning every stock. The ledger identifies tickers by the ids of the data
+ * store's ticker symbol table.
  */
 public class Portfolio implements IPortfolio {
   private final List<IStock> stockList;
   private final String portfolioName;
-  private HashMap<LocalDate, Double> costBasisMap;
+  private final PositionLedger positionLedger;
+  private final CostBasisIndex costBasisIndex;
 
   /**
    * Create a new Portfolio initialized with the given portfolio name and an empty list of stocks.
@@ -34,101 +42,120 @@ public class Portfolio implements IPortfolio {
   public Portfolio(String portfolioName) {
     this.portfolioName = portfolioName;
     this.stockList = new ArrayList<>();
-    this.costBasisMap = new HashMap<>();
+    this.positionLedger = new PositionLedger();
+    this.costBasisIndex = new CostBasisIndex();
   }
 
-  @Override
-  public double getPortfolioValue(IStockDataStore dataStore, LocalDate date)
-          throws NoSuchElementException {
-    double portfolioValue = 0;
-    List<IStock> filteredStocks = stockList
-            .stream()
-            .filter(s -> {
-              String purchaseDateString = s.getPurchaseDate();
-              LocalDate purchaseDate = LocalDate.parse(purchaseDateString,
-                      DateTimeFormatter.ofPattern(Stock.STOCK_PURCHASE_DATE_FORMAT));
-              return purchaseDate.isBefore(date) || purchaseDate.isEqual(date);
-            })
-            .collect(Collectors.toList());
-
-    try {
-      for (IStock stock : filteredStocks) {
-        double stockValue = dataStore.getStockValue(stock.getStockName(), date);
-        portfolioValue += (stockValue * stock.getStockQuantity());
+  /**
+   * Create a new Portfolio with the given portfolio name from stocks and cost basis amounts that
+   * were validated when they were stored. No stock prices are looked up, so a stored portfolio
+   * is built in a single pass over its stocks. Stocks with the same name and purchase date are
+   * combined into one stock, as they are by addStock.
+   *
+   * @param portfolioName the name of the portfolio to be created
+   * @param dataStore     the data store whose ticker ids the portfolio's position ledger uses
+   * @param stocks        the stocks of the portfolio, in the order in which they were added
+   * @param costBasisMap  the map from each date to the amount invested on that date
+   * @throws IllegalArgumentException if a stock is not supported by the data store
+   */
+  Portfolio(String portfolioName, IStockDataStore dataStore, List<IStock> stocks,
+            Map<LocalDate, Double> costBasisMap) throws IllegalArgumentException {
+    this(portfolioName);
+    positionLedger.useTickerSymbolTable(dataStore.getTickerSymbolTable());
+    Map<String, Integer> stockIndexes = new HashMap<>();
+    for (IStock stock : stocks) {
+      String stockKey = stock.getStockName() + "," + stock.getPurchaseDate();
+      Integer stockIndex = stockIndexes.putIfAbsent(stockKey, stockList.size());
+      if (stockIndex == null) {
+        stockList.add(stock);
+      } else {
+        stockList.set(stockIndex,
+                addNewStockQuantity(stockList.get(stockIndex), stock.getStockQuantity()));
       }
-    } catch (NoSuchElementException exception) {
-      throw new NoSuchElementException(exception.getMessage());
+      addToPositionLedger(stock);
     }
-    return portfolioValue;
+    costBasisIndex.putAll(costBasisMap);
   }
 
-  private double getPortfolioValueForAllStocks(IStockDataStore dataStore, LocalDate date)
+  @Override
+  public double getPortfolioValue(IStockDataStore dataStore, LocalDate date)
           throws NoSuchElementException {
+    // only the stocks purchased on or before the given date are part of the portfolio's value
+    // the ledger consolidates the stocks by ticker id, so that every stock's price is
+    // looked up once, by id
+    int holdingsDay = (int) date.toEpochDay();
+    TickerSymbolTable tickerSymbols = dataStore.getTickerSymbolTable();
+    int[] tickerIds = positionLedger.getTickerIds(tickerSymbols, holdingsDay);
+    double[] stockQuantities = positionLedger.getQuantities(tickerSymbols, tickerIds,
+            holdingsDay);
+    double[][] stockValues = dataStore.getStockValues(tickerIds, new LocalDate[]{date});
+
     double portfolioValue = 0;
-    try {
-      for (IStock stock : stockList) {
-        double stockValue = dataStore.getStockValue(stock.getStockName(), date);
-        portfolioValue += (stockValue * stock.getStockQuantity());
+    for (int i = 0; i < tickerIds.length; i++) {
+      double stockValue = stockValues[i][0];
+      if (Double.isNaN(stockValue)) {
+        // look the price up individually to report the missing price
+        stockValue = dataStore.getStockValue(tickerSymbols.getSymbol(tickerIds[i]), date);
       }
-    } catch (NoSuchElementException exception) {
-      throw new NoSuchElementException(exception.getMessage());
+      portfolioValue += (stockValue * stockQuantities[i]);
     }
     return portfolioValue;
   }
 
   @Override
-  public void addStock(IStockDataStore dataStore, IStock stock, float commissionFee) {
+  public double addStock(IStockDataStore dataStore, IStock stock, float commissionFee) {
     // Check if the stock is supported by the stock data store
     if (!isSupportedStock(dataStore, stock.getStockName())) {
       throw new IllegalArgumentException("The program does not support the "
               + "provided stock name '" + stock.getStockName() + "'");
     }
+    positionLedger.useTickerSymbolTable(dataStore.getTickerSymbolTable());
 
     IStock existingStock = getDuplicateStock(stock);
     if (existingStock != null) {
       stockList.set(stockList.indexOf(existingStock),
               addNewStockQuantity(existingStock, stock.getStockQuantity()));
+      addToPositionLedger(stock);
+      return 0;
     } else {
       //Calculate cost basis for a stock
-      LocalDate purchaseDate = LocalDate.parse(stock.getPurchaseDate(),
-              DateTimeFormatter.ofPattern(Stock.STOCK_PURCHASE_DATE_FORMAT));
+      LocalDate purchaseDate = stock.getPurchaseDate();
       double stockValue = 0;
       try {
         stockValue = dataStore.getStockValue(stock.getStockName(), purchaseDate);
         stockList.add(stock);
+        addToPositionLedger(stock);
       } catch (NoSuchElementException e) {
         throw e;
       }
       stockValue += commissionFee;
 
-      if (costBasisMap.containsKey(purchaseDate)) {
-        double existingCostBasisValue = costBasisMap.get(purchaseDate);
-        existingCostBasisValue += stockValue;
-        costBasisMap.put(purchaseDate, existingCostBasisValue);
-      } else {
-        costBasisMap.put(purchaseDate, stockValue);
-      }
+      costBasisIndex.add(purchaseDate, stockValue);
+      return stockValue;
     }
   }
 
   @Override
   public HashMap<LocalDate, Double> getCostBasisMap() {
-    return this.costBasisMap;
+    return this.costBasisIndex.toMap();
   }
 
   @Override
   public void setCostBasisMap(HashMap<LocalDate, Double> costBasisMap) {
-    this.costBasisMap = costBasisMap;
+    this.costBasisIndex.putAll(costBasisMap);
   }
 
   @Override
   public void updateStock(IStockDataStore dataStore, Stock stock, IStock existingStock) {
     stockList.set(stockList.indexOf(existingStock), stock);
+    positionLedger.useTickerSymbolTable(dataStore.getTickerSymbolTable());
+    rebuildPositionLedger();
   }
 
   @Override
   public void deleteStock(IStock stock) {
     stockList.remove(stock);
+    rebuildPositionLedger();
   }
 
   @Override
@@ -138,16 +165,15 @@ public class Portfolio implements IPortfolio {
 
   @Override
   public List<IStock> getStocksList() {
-    return this.stockList;
+    // the list is read-only, since the position ledger must follow every change to it
+    return Collections.unmodifiableList(this.stockList);
   }
 
   @Override
   public List<IStock> getStockListOnAndBeforeCompositionDate(LocalDate compositionDate) {
     List<IStock> compositionStockList = new ArrayList<>();
     for (IStock stock : this.stockList) {
-      LocalDate stockPurchaseDate = LocalDate.parse(stock.getPurchaseDate(),
-              DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-      if (!stockPurchaseDate.isAfter(compositionDate)) {
+      if (!stock.getPurchaseDate().isAfter(compositionDate)) {
         compositionStockList.add(stock);
       }
     }
@@ -156,15 +182,7 @@ public class Portfolio implements IPortfolio {
 
   @Override
   public double getCostBasis(LocalDate costBasisDate) {
-    double costBasis = 0;
-
-    for (LocalDate date : costBasisMap.keySet()) {
-      if (!date.isAfter(costBasisDate)) {
-        costBasis += costBasisMap.get(date);
-      }
-    }
-
-    return costBasis;
+    return costBasisIndex.getCostBasis(costBasisDate);
   }
 
   @Override
@@ -203,6 +221,48 @@ public class Portfolio implements IPortfolio {
     return performanceData;
   }
 
+  @Override
+  public IPortfolioTimeSeries getPerformanceSeries(LocalDate startDate,
+                                                   LocalDate endDate,
+                                                   PerformanceStep step,
+                                                   PerformanceAggregation aggregation,
+                                                   IStockDataStore dataStore) {
+    // collect every trading day in the range
+    int[] tradingDays = new int[64];
+    int tradingDayCount = 0;
+    LocalDate currentDate = dataStore.getNextValidMarketDate(startDate);
+    while (!currentDate.isAfter(endDate) && dataStore.isValidStockMarketDate(currentDate)) {
+      if (tradingDayCount == tradingDays.length) {
+        tradingDays = Arrays.copyOf(tradingDays, tradingDayCount * 2);
+      }
+      tradingDays[tradingDayCount++] = (int) currentDate.toEpochDay();
+      currentDate = dataStore.getNextValidMarketDate(currentDate.plusDays(1));
+    }
+    tradingDays = Arrays.copyOf(tradingDays, tradingDayCount);
+    double[] tradingDayValues = positionLedger.getMarketValues(dataStore, tradingDays);
+
+    // aggregate the trading days of every step into a single point, written over the arrays
+    int pointCount = 0;
+    long currentBucket = 0;
+    for (int i = 0; i < tradingDayCount; i++) {
+      long bucket = step.getBucket(tradingDays[i], i);
+      double value = tradingDayValues[i];
+      if (pointCount == 0 || bucket != currentBucket) {
+        currentBucket = bucket;
+        pointCount++;
+      } else if (aggregation == PerformanceAggregation.MIN) {
+        value = Math.min(value, tradingDayValues[pointCount - 1]);
+      } else if (aggregation == PerformanceAggregation.MAX) {
+        value = Math.max(value, tradingDayValues[pointCount - 1]);
+      }
+      tradingDays[pointCount - 1] = tradingDays[i];
+      tradingDayValues[pointCount - 1] = value;
+    }
+
+    return new PortfolioTimeSeries(this.getPortfolioName(), tradingDays, tradingDayValues,
+            pointCount);
+  }
+
   private void populateDailyPerformanceData(LocalDate startDate,
                                             List<PortfolioPerformanceData
                                                     .PerformanceDataFrame> performanceDataList,
@@ -211,28 +271,24 @@ public class Portfolio implements IPortfolio {
     int dataFrames = Math.toIntExact(weekDaysInRange) + 1;
     dataFrames = dataFrames < 5 ? 5 : dataFrames; // there should be at least 5 data frames
     LocalDate currentFrameDate = startDate;
+    List<String> frameNames = new ArrayList<>();
+    List<LocalDate> frameDates = new ArrayList<>();
 
     for (int i = 0; i < dataFrames; i++) {
-      double portfolioValue = 0;
-      try {
-        portfolioValue = getPortfolioValueForAllStocks(dataStore, currentFrameDate);
-      } catch (NoSuchElementException e) {
+      if (!dataStore.isValidStockMarketDate(currentFrameDate)) {
         currentFrameDate = getNextClosestWeekday(currentFrameDate);
-        portfolioValue = getPortfolioValueForAllStocks(dataStore, currentFrameDate);
       }
 
       // convert the time frame to string format
       String dataFrameDurationAsString = MessageFormat.format(
               "{0}",
               currentFrameDate.format(DateTimeFormatter.ofPattern("EEE, dd MMM yyyy")));
-
-      // Enter the data for this frame into the map
-      performanceDataList.add(new PortfolioPerformanceData.PerformanceDataFrame(
-              dataFrameDurationAsString,
-              portfolioValue));
+      frameNames.add(dataFrameDurationAsString);
+      frameDates.add(currentFrameDate);
 
       currentFrameDate = getNextClosestWeekday(currentFrameDate);
     }
+    addPerformanceDataFrames(performanceDataList, frameNames, frameDates, dataStore);
   }
 
   private void populateMonthlyPerformanceData(LocalDate startDate,
@@ -243,32 +299,27 @@ public class Portfolio implements IPortfolio {
     int dataFrames = Math.toIntExact(monthsInRange) + 1;
     dataFrames = dataFrames < 5 ? 5 : dataFrames; // there should be at least 5 data frames
     LocalDate currentFrameDate = startDate;
+    List<String> frameNames = new ArrayList<>();
+    List<LocalDate> frameDates = new ArrayList<>();
 
     for (int i = 0; i < dataFrames; i++) {
       LocalDate lastWorkingDayOfMonth = getLastWorkingDateOfMonth(currentFrameDate);
-      double portfolioValue = 0;
-      try {
-        portfolioValue = getPortfolioValueForAllStocks(dataStore, lastWorkingDayOfMonth);
-      } catch (NoSuchElementException e) {
+      if (!dataStore.isValidStockMarketDate(lastWorkingDayOfMonth)) {
         lastWorkingDayOfMonth = getLastRecentWeekday(lastWorkingDayOfMonth);
         lastWorkingDayOfMonth = dataStore.getNextValidMarketDate(lastWorkingDayOfMonth);
-        portfolioValue = getPortfolioValueForAllStocks(dataStore, lastWorkingDayOfMonth);
       }
 
-
       // convert the time frame to string format
       String dataFrameDurationAsString = MessageFormat.format(
               "{0} {1}",
               currentFrameDate.getMonth().toString().substring(0, 3),
               Integer.toString(currentFrameDate.getYear()));
-
-      // Enter the data for this frame into the map
-      performanceDataList.add(new PortfolioPerformanceData.PerformanceDataFrame(
-              dataFrameDurationAsString,
-              portfolioValue));
+      frameNames.add(dataFrameDurationAsString);
+      frameDates.add(lastWorkingDayOfMonth);
 
       currentFrameDate = currentFrameDate.plusMonths(1);
     }
+    addPerformanceDataFrames(performanceDataList, frameNames, frameDates, dataStore);
   }
 
   private void populateYearlyPerformanceData(LocalDate startDate,
@@ -279,30 +330,26 @@ public class Portfolio implements IPortfolio {
     int dataFrames = Math.toIntExact((long) Math.floor(monthsInRange / 12)) + 1;
     dataFrames = dataFrames < 5 ? 5 : dataFrames; // there should be at least 5 data frames
     LocalDate currentFrameDate = startDate;
+    List<String> frameNames = new ArrayList<>();
+    List<LocalDate> frameDates = new ArrayList<>();
 
     for (int i = 0; i < dataFrames; i++) {
       LocalDate lastWorkingDayOfYear = getLastWorkingDateOfYear(currentFrameDate);
-      double portfolioValue = 0;
-      try {
-        portfolioValue = getPortfolioValueForAllStocks(dataStore, lastWorkingDayOfYear);
-      } catch (NoSuchElementException e) {
+      if (!dataStore.isValidStockMarketDate(lastWorkingDayOfYear)) {
         lastWorkingDayOfYear = getLastRecentWeekday(lastWorkingDayOfYear);
         lastWorkingDayOfYear = dataStore.getNextValidMarketDate(lastWorkingDayOfYear);
-        portfolioValue = getPortfolioValueForAllStocks(dataStore, lastWorkingDayOfYear);
       }
 
       // convert the time frame to string format
       String dataFrameDurationAsString = MessageFormat.format(
               "{0}",
               Integer.toString(currentFrameDate.getYear()));
-
-      // Enter the data for this frame into the map
-      performanceDataList.add(new PortfolioPerformanceData.PerformanceDataFrame(
-              dataFrameDurationAsString,
-              portfolioValue));
+      frameNames.add(dataFrameDurationAsString);
+      frameDates.add(lastWorkingDayOfYear);
 
       currentFrameDate = currentFrameDate.plusYears(1);
     }
+    addPerformanceDataFrames(performanceDataList, frameNames, frameDates, dataStore);
   }
 
   private void populateTriMonthlyPerformanceData(LocalDate startDate,
@@ -315,6 +362,8 @@ public class Portfolio implements IPortfolio {
     dataFrames = dataFrames < 5 ? 5 : dataFrames; // there should be at least 5 data frames
     LocalDate currentFrameStartDate = startDate;
     LocalDate currentFrameEndDate = startDate;
+    List<String> frameNames = new ArrayList<>();
+    List<LocalDate> frameDates = new ArrayList<>();
     for (int i = 0; i < dataFrames; i++) {
       // calculate the portfolio's value at the last working day of the time frame
       currentFrameEndDate = currentFrameStartDate.plusMonths(2);
@@ -344,13 +393,9 @@ public class Portfolio implements IPortfolio {
       } else {
         lastWorkingDayOfMonth = getLastWorkingDateOfMonth(currentFrameEndDate);
       }
-      double portfolioValue = 0;
-      try {
-        portfolioValue = getPortfolioValueForAllStocks(dataStore, lastWorkingDayOfMonth);
-      } catch (NoSuchElementException e) {
+      if (!dataStore.isValidStockMarketDate(lastWorkingDayOfMonth)) {
         lastWorkingDayOfMonth = getLastRecentWeekday(lastWorkingDayOfMonth.minusDays(1));
         lastWorkingDayOfMonth = dataStore.getNextValidMarketDate(lastWorkingDayOfMonth);
-        portfolioValue = getPortfolioValueForAllStocks(dataStore, lastWorkingDayOfMonth);
       }
 
       // convert the time frame to string format
@@ -360,15 +405,33 @@ public class Portfolio implements IPortfolio {
               Integer.toString(currentFrameStartDate.getYear()),
               currentFrameEndDate.getMonth().toString().substring(0, 3),
               Integer.toString(currentFrameEndDate.getYear()));
-
-      // Enter the data for this frame into the map
-      performanceDataList.add(new PortfolioPerformanceData.PerformanceDataFrame(
-              dataFrameDurationAsString,
-              portfolioValue));
+      frameNames.add(dataFrameDurationAsString);
+      frameDates.add(lastWorkingDayOfMonth);
 
       // update the start date for the next time frame
       currentFrameStartDate = currentFrameEndDate.plusMonths(1);
     }
+    addPerformanceDataFrames(performanceDataList, frameNames, frameDates, dataStore);
+  }
+
+  private void addPerformanceDataFrames(List<PortfolioPerformanceData
+                                                .PerformanceDataFrame> performanceDataList,
+                                        List<String> frameNames,
+                                        List<LocalDate> frameDates,
+                                        IStockDataStore dataStore) {
+    // value every frame in a single sweep over the portfolio's positions and their prices
+    int[] frameDays = new int[frameDates.size()];
+    for (int i = 0; i < frameDays.length; i++) {
+      frameDays[i] = (int) frameDates.get(i).toEpochDay();
+    }
+    double[] portfolioValues = positionLedger.getMarketValues(dataStore, frameDays);
+
+    for (int i = 0; i < frameDays.length; i++) {
+      // Enter the data for this frame into the map
+      performanceDataList.add(new PortfolioPerformanceData.PerformanceDataFrame(
+              frameNames.get(i),
+              portfolioValues[i]));
+    }
   }
 
   private LocalDate getLastWorkingDateOfMonth(LocalDate date) {
@@ -455,6 +518,18 @@ public class Portfolio implements IPortfolio {
     return duplicateStock;
   }
 
+  private void addToPositionLedger(IStock stock) {
+    positionLedger.addLot(stock.getStockName(), (int) stock.getPurchaseDate().toEpochDay(),
+            stock.getQuantityUnits());
+  }
+
+  private void rebuildPositionLedger() {
+    positionLedger.clear();
+    for (IStock stock : stockList) {
+      addToPositionLedger(stock);
+    }
+  }
+
   private IStock addNewStockQuantity(IStock existingStock, float quantityToBeAdded) {
     return existingStock.addStockQuantity(quantityToBeAdded);
   }
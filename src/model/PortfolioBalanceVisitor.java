@@ -1,21 +1,25 @@
 package model;
 
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 
 import model.stockdatastore.IStockDataStore;
+import model.stockdatastore.TickerSymbolTable;
 
 /**
  * Visitor class for PortfolioBalance.
+ * The visitor balances a portfolio on a date, so that each of the given stocks makes up the given
+ * percentage of the portfolio's value on that date. The quantities held and the prices are kept
+ * in arrays indexed by the data store's ticker ids, the trades are computed in a single pass over
+ * the target stocks, and only the resulting buy and sell lots are added to the portfolio.
+ * Stocks held by the portfolio that have no target percentage are left as they are.
+ * Each added lot is reported to the visitor's trade listener as soon as it is added, together
+ * with the amount the lot added to the portfolio's cost basis, so that the caller can store the
+ * trades one by one.
  * @param <T> Generic type.
  */
 public class PortfolioBalanceVisitor<T> implements PortfolioVisitor<T> {
@@ -23,8 +27,8 @@ public class PortfolioBalanceVisitor<T> implements PortfolioVisitor<T> {
   private final LocalDate d;
   private final IStockDataStore ds;
   private final Map<String, Double> balancePercent;
-  private final Comparator<IStock> compareByDate;
   private final Function<IPortfolio, T> ff;
+  private final BiConsumer<IStock, Double> tradeListener;
 
   /**
    * Constructor for Balance Portfolio Visitor class.
@@ -36,108 +40,110 @@ public class PortfolioBalanceVisitor<T> implements PortfolioVisitor<T> {
    */
   public PortfolioBalanceVisitor(LocalDate d, IStockDataStore ds, Map<String, Double> bp,
                                  Function<IPortfolio, T> fp) {
+    this(d, ds, bp, fp, (lot, costBasisAmount) -> { });
+  }
+
+  /**
+   * Constructor for Balance Portfolio Visitor class, which reports every lot it adds.
+   * It initializes date, datastore, stock percentages, function and trade listener.
+   * @param d date
+   * @param ds datastore
+   * @param bp stock percentages
+   * @param fp function
+   * @param tl trade listener, given each added lot and the amount it added to the cost basis
+   */
+  public PortfolioBalanceVisitor(LocalDate d, IStockDataStore ds, Map<String, Double> bp,
+                                 Function<IPortfolio, T> fp, BiConsumer<IStock, Double> tl) {
     this.d = d;
     this.ds = ds;
     this.balancePercent = bp;
     this.ff = fp;
-    this.compareByDate = new Comparator<IStock>() {
-      public int compare(IStock m1, IStock m2) {
-        try {
-          return new SimpleDateFormat("yyyy-MM-dd").parse(m1.getPurchaseDate())
-                  .compareTo(
-                          new SimpleDateFormat("yyyy-MM-dd").parse(m2.getPurchaseDate()));
-        } catch (ParseException e) {
-          throw new RuntimeException(e);
-        }
-      }
-    };
+    this.tradeListener = tl;
   }
 
   @Override
   public T apply(IPortfolio p) throws ParseException {
-    System.out.println("came in this to balance...");
-    DateTimeFormatter ff = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-    System.out.println("formatted date.....");
+    TickerSymbolTable tickerSymbols = this.ds.getTickerSymbolTable();
 
-    Map<String, Double> stocks = new HashMap<>();
+    // consolidate the quantities held on the date by ticker id, in one pass over the lots
+    long[] quantityUnits = new long[tickerSymbols.size()];
+    boolean[] priced = new boolean[tickerSymbols.size()];
+    int[] pricedIds = new int[tickerSymbols.size()];
+    int heldCount = 0;
     for (IStock is : p.getStocksList()) {
-      if (LocalDate.parse(is.getPurchaseDate(), ff).compareTo(d) <= 0) {
-        if (stocks.containsKey(is.getStockName())) {
-          stocks.put(is.getStockName(), stocks.get(is.getStockName()) + is.getStockQuantity());
-        } else {
-          stocks.put(is.getStockName(), (double) is.getStockQuantity());
+      if (!is.getPurchaseDate().isAfter(d)) {
+        int tickerId = getTickerId(tickerSymbols, is.getStockName());
+        quantityUnits[tickerId] += is.getQuantityUnits();
+        if (!priced[tickerId]) {
+          priced[tickerId] = true;
+          pricedIds[heldCount++] = tickerId;
         }
       }
     }
 
-    System.out.println("consolidated the stocks...");
-    System.out.println(stocks);
-
-    Double totalMoney = 0d;
-    Map<String, Double> stockMoney = new HashMap<>();
-    for (Map.Entry<String, Double> stock : stocks.entrySet()) {
-      double cost = this.ds.getStockValue(stock.getKey(), this.d) * stock.getValue();
-      totalMoney += cost;
-      stockMoney.put(stock.getKey(), cost);
-    }
-
-    System.out.println("converted stocks to money...");
-    System.out.println(this.balancePercent);
-    System.out.println(totalMoney);
-    System.out.println(stockMoney);
-
-    Map<String, Double> opsPerformed = new LinkedHashMap<>();
-    List<String> operation = new ArrayList<>();
+    // the target stocks, which need not be held yet
+    int targetCount = this.balancePercent.size();
+    int[] targetIds = new int[targetCount];
+    double[] targetPercents = new double[targetCount];
+    int pricedCount = heldCount;
+    int t = 0;
     for (Map.Entry<String, Double> stock : this.balancePercent.entrySet()) {
-      Double stockPercent = (stockMoney.get(stock.getKey()) / totalMoney) * 100;
-      System.out.println(stockPercent);
-      double worth = 0d;
-      if (stockPercent.equals(stock.getValue())) {
-        continue;
-      } else if (stockPercent < stock.getValue()) {
-        worth = ((stock.getValue() - stockPercent) / 100) * totalMoney;
-        operation.add("buy");
-      } else {
-        worth = ((stockPercent - stock.getValue()) / 100) * totalMoney;
-        operation.add("sell");
+      int tickerId = getTickerId(tickerSymbols, stock.getKey());
+      targetIds[t] = tickerId;
+      targetPercents[t] = stock.getValue();
+      t++;
+      if (!priced[tickerId]) {
+        priced[tickerId] = true;
+        pricedIds[pricedCount++] = tickerId;
       }
-      String vv = String.format("%.2f", worth / this.ds.getStockValue(stock.getKey(), this.d));
-      opsPerformed.put(stock.getKey(), Double.valueOf(vv));
     }
 
-    System.out.println("got the operations to be performed");
-    System.out.println(opsPerformed);
-    System.out.println(operation);
-
-
-    List<IStock> sts = new ArrayList<>(p.getStocksList());
-    List<String> test = new ArrayList<String>(opsPerformed.keySet());
-
-
-    sts.sort(this.compareByDate);
-
-    for (int i = 0; i < test.size(); i++) {
-      if (operation.get(i).equalsIgnoreCase("buy")) {
-        IStock temp = new Stock(test.get(i), opsPerformed.get(test.get(i)).floatValue(),
-                this.d.format(ff));
-        sts.add(temp);
-      } else {
-
-        IStock temp = new Stock(test.get(i), -1 * opsPerformed.get(test.get(i))
-                .floatValue(), this.d.format(ff));
-        sts.add(temp);
+    // look up the prices of all the held and target stocks in a single batch, before the
+    // portfolio is changed, so that a missing price leaves the portfolio as it was
+    double[][] prices = this.ds.getStockValues(Arrays.copyOf(pricedIds, pricedCount),
+            new LocalDate[]{this.d});
+    double[] stockPrices = new double[tickerSymbols.size()];
+    for (int i = 0; i < pricedCount; i++) {
+      double price = prices[i][0];
+      if (Double.isNaN(price)) {
+        price = this.ds.getStockValue(tickerSymbols.getSymbol(pricedIds[i]), this.d);
       }
+      stockPrices[pricedIds[i]] = price;
     }
 
-    sts.sort(this.compareByDate);
-
+    double totalMoney = 0;
+    for (int i = 0; i < heldCount; i++) {
+      int tickerId = pricedIds[i];
+      totalMoney += stockPrices[tickerId] * quantityUnits[tickerId] / Stock.QUANTITY_SCALE;
+    }
+    if (totalMoney <= 0) {
+      throw new IllegalArgumentException("The portfolio has no value on " + this.d
+              + " to be balanced.");
+    }
 
-    IPortfolio rv = new Portfolio(p.getPortfolioName());
-    for (IStock xx :
-            sts) {
-      rv.addStock(this.ds, xx, 0);
+    // compute every trade first, and then add only the traded lots to the portfolio
+    float[] tradeQuantities = new float[targetCount];
+    for (int i = 0; i < targetCount; i++) {
+      int tickerId = targetIds[i];
+      double stockMoney = stockPrices[tickerId] * quantityUnits[tickerId] / Stock.QUANTITY_SCALE;
+      double worth = (targetPercents[i] / 100) * totalMoney - stockMoney;
+      tradeQuantities[i] = (float) (Math.round(worth / stockPrices[tickerId] * 100.0) / 100.0);
     }
-    return this.ff.apply(rv);
+    for (int i = 0; i < targetCount; i++) {
+      if (tradeQuantities[i] != 0) {
+        IStock lot = new Stock(tickerSymbols.getSymbol(targetIds[i]), tradeQuantities[i], this.d);
+        this.tradeListener.accept(lot, p.addStock(this.ds, lot, 0));
+      }
+    }
+    return this.ff.apply(p);
+  }
 
+  private static int getTickerId(TickerSymbolTable tickerSymbols, String stockName) {
+    int tickerId = tickerSymbols.getId(stockName);
+    if (tickerId == TickerSymbolTable.NO_ID) {
+      throw new IllegalArgumentException("The program does not support the "
+              + "provided stock name '" + stockName + "'");
+    }
+    return tickerId;
   }
 }
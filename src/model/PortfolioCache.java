@@ -0,0 +1,201 @@
+package model;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+
+/**
+ * The PortfolioCache class keeps the recently used portfolios in memory within a memory budget.
+ * A portfolio that is not in the cache is loaded (hydrated) with the cache's loader the first
+ * time it is requested, and when the portfolios held by the cache use more memory than the budget
+ * allows, the least recently used portfolios are evicted. An evicted portfolio is loaded again
+ * the next time it is requested, so a portfolio may only be evicted once all of its changes are
+ * stored.
+ * The memory used by a portfolio is estimated as BYTES_PER_STOCK bytes per stock in the
+ * portfolio, and is measured again whenever the portfolio is put in the cache.
+ * A PortfolioCache can be shared between threads. A portfolio is loaded outside of the cache's
+ * lock and at most once at a time: concurrent requests for a portfolio that is being loaded wait
+ * for that single load instead of starting their own, while requests for other portfolios go
+ * ahead. A load that completes after the portfolio has been put in the cache, or after the cache
+ * has been cleared, is not cached.
+ */
+class PortfolioCache {
+  /**
+   * The memory budget of a cache that never evicts a portfolio.
+   */
+  static final long UNBOUNDED = Long.MAX_VALUE;
+
+  /**
+   * The estimated number of bytes used by one stock of a portfolio, covering the stock itself,
+   * its entry in the portfolio's position ledger, and its share of the cost basis index.
+   */
+  static final long BYTES_PER_STOCK = 160;
+
+  private final long memoryBudget;
+  private final Function<String, IPortfolio> loader;
+  private final ConcurrentMap<String, CacheEntry> entries;
+  private final Map<String, CacheEntry> usageOrder;
+  private final Object evictionLock;
+  private long memoryUsage;
+
+  /**
+   * Create a new PortfolioCache with the given memory budget, which loads missing portfolios with
+   * the given loader.
+   *
+   * @param memoryBudget the number of bytes the cached portfolios may use, or UNBOUNDED
+   * @param loader       the function that loads a portfolio given its name
+   * @throws IllegalArgumentException if the memory budget is not positive
+   */
+  PortfolioCache(long memoryBudget, Function<String, IPortfolio> loader)
+          throws IllegalArgumentException {
+    if (memoryBudget <= 0) {
+      throw new IllegalArgumentException("The memory budget of the portfolio cache must be "
+              + "positive.");
+    }
+    this.memoryBudget = memoryBudget;
+    this.loader = loader;
+    this.entries = new ConcurrentHashMap<>();
+    // iterating in access order visits the least recently used portfolio first
+    this.usageOrder = new LinkedHashMap<>(16, 0.75f, true);
+    this.evictionLock = new Object();
+  }
+
+  /**
+   * Get the portfolio with the given name, loading it if it is not in the cache.
+   *
+   * @param portfolioName the name of the portfolio
+   * @return the portfolio
+   * @throws RuntimeException if the portfolio could not be loaded
+   */
+  IPortfolio get(String portfolioName) {
+    CacheEntry entry = entries.get(portfolioName);
+    boolean loadedHere = false;
+    if (entry == null) {
+      CacheEntry newEntry = new CacheEntry(portfolioName,
+          new FutureTask<>(() -> loader.apply(portfolioName)));
+      entry = entries.putIfAbsent(portfolioName, newEntry);
+      if (entry == null) {
+        entry = newEntry;
+        loadedHere = true;
+        newEntry.loader.run();
+      }
+    }
+    if (!loadedHere && memoryBudget != UNBOUNDED) {
+      // an unbounded cache never evicts, so the order of use does not matter
+      synchronized (evictionLock) {
+        usageOrder.get(portfolioName);
+      }
+    }
+
+    IPortfolio portfolio;
+    try {
+      portfolio = entry.loader.get();
+    } catch (ExecutionException e) {
+      // forget the failed load, so that the portfolio can be loaded again later
+      entries.remove(portfolioName, entry);
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Loading the portfolio " + portfolioName
+              + " was interrupted.");
+    }
+
+    if (loadedHere) {
+      admit(entry, portfolio);
+    }
+    return portfolio;
+  }
+
+  /**
+   * Put the given portfolio in the cache as its most recently used portfolio, replacing the
+   * cached portfolio with the same name, and measure the memory it uses again.
+   *
+   * @param portfolio the portfolio to be cached
+   */
+  void put(IPortfolio portfolio) {
+    CacheEntry entry = new CacheEntry(portfolio.getPortfolioName(),
+        new FutureTask<>(() -> portfolio));
+    entry.loader.run();
+    entries.put(entry.portfolioName, entry);
+    admit(entry, portfolio);
+  }
+
+  /**
+   * Remove every portfolio from this cache.
+   */
+  void clear() {
+    synchronized (evictionLock) {
+      entries.clear();
+      usageOrder.clear();
+      memoryUsage = 0;
+    }
+  }
+
+  /**
+   * Check if the portfolio with the given name is currently held in this cache.
+   *
+   * @param portfolioName the name of the portfolio
+   * @return true if the portfolio is cached, false otherwise
+   */
+  boolean contains(String portfolioName) {
+    synchronized (evictionLock) {
+      return usageOrder.containsKey(portfolioName);
+    }
+  }
+
+  /**
+   * Get the memory currently used by the portfolios held in this cache.
+   *
+   * @return the estimated number of bytes used by the cached portfolios
+   */
+  long getMemoryUsage() {
+    synchronized (evictionLock) {
+      return memoryUsage;
+    }
+  }
+
+  private void admit(CacheEntry admittedEntry, IPortfolio portfolio) {
+    synchronized (evictionLock) {
+      if (entries.get(admittedEntry.portfolioName) != admittedEntry) {
+        // the entry was replaced or cleared while its portfolio was being loaded
+        return;
+      }
+      CacheEntry replacedEntry = usageOrder.remove(admittedEntry.portfolioName);
+      if (replacedEntry != null) {
+        memoryUsage -= replacedEntry.weight;
+      }
+      admittedEntry.weight = portfolio.getStocksList().size() * BYTES_PER_STOCK;
+      usageOrder.put(admittedEntry.portfolioName, admittedEntry);
+      memoryUsage += admittedEntry.weight;
+
+      // evict the least recently used portfolios until the budget is met, but never the
+      // portfolio that has just been admitted (the last one), since it is about to be used
+      Iterator<CacheEntry> iterator = usageOrder.values().iterator();
+      while (memoryUsage > memoryBudget && usageOrder.size() > 1) {
+        CacheEntry victim = iterator.next();
+        iterator.remove();
+        entries.remove(victim.portfolioName, victim);
+        memoryUsage -= victim.weight;
+      }
+    }
+  }
+
+  private static final class CacheEntry {
+    private final String portfolioName;
+    private final FutureTask<IPortfolio> loader;
+    private long weight;
+
+    private CacheEntry(String portfolioName, FutureTask<IPortfolio> loader) {
+      this.portfolioName = portfolioName;
+      this.loader = loader;
+    }
+  }
+}
@@ -0,0 +1,10 @@
+package model;
+
+/**
+ * This enumeration contains the list of all formats in which the snapshots of portfolios can be
+ * stored by the application. Portfolios stored in either format can always be read.
+ */
+public enum PortfolioFileFormat {
+  CsvFiles,
+  BinaryFiles
+}
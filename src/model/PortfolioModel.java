@@ -8,16 +8,20 @@ import java.nio.file.FileAlreadyExistsException;
 import java.text.ParseException;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 import model.stockdatastore.IStockDataStore;
 import model.stockdatastore.StockDataStore;
+import model.stockdatastore.TickerSymbolTable;
 
 /**
  * The PortfolioModel class implements the IModel interface.
@@ -25,20 +29,100 @@ import model.stockdatastore.StockDataStore;
  * the portfolios.
  * The various operations include, but are not limited to, 'creating a portfolio', 'examining a
  * portfolio', and 'getting a portfolio's value for a given date'.
+ * The portfolios are kept in the order in which they are added, and each portfolio's position in
+ * that order is its id. Portfolios are looked up by name through an index from each name to its
+ * id.
+ * Stored portfolios are not read when they are retrieved: only their names are registered, and a
+ * portfolio is read from its files the first time it is used. The portfolios in memory are kept
+ * within a memory budget by evicting the least recently used ones, which is safe because every
+ * change to a portfolio is stored as soon as it is made.
  */
 public class PortfolioModel implements IModel {
+  private static final DateTimeFormatter purchaseDateFormatter = DateTimeFormatter
+          .ofPattern("uuuu-MM-dd")
+          .withResolverStyle(ResolverStyle.STRICT);
+  private static final int defaultTradesPerSync = 64;
+  private static final long defaultSyncDelayMillis = 1000;
+  private static final long defaultPortfolioMemoryBudget = 64L << 20;
   private final String portfoliosDirectory = "Portfolios";
-  private final List<IPortfolio> portfolios;
+  private final List<String> portfolioNames;
+  private final Map<String, Integer> portfolioIds;
+  private final PortfolioCache residentPortfolios;
   private final IStockDataStore dataStore;
+  private final TransactionLogSyncer transactionLogSyncer;
+  private final PortfolioFileFormat snapshotFormat;
   private float commissionFee;
   private float commissionFeeReductionPercentage;
 
   /**
-   * Create a new PortfolioModel initialized with an empty list of portfolios.
+   * Create a new PortfolioModel initialized with an empty list of portfolios. The trades logged
+   * to the portfolio files are synced to the storage device in batches of up to 64 trades, or
+   * about a second apart.
    */
   public PortfolioModel() {
+    this(defaultTradesPerSync, defaultSyncDelayMillis);
+  }
+
+  /**
+   * Create a new PortfolioModel initialized with an empty list of portfolios, with the given
+   * policy for syncing the trades logged to the portfolio files to the storage device. The logs
+   * are synced together once the given number of trades is pending, or once a trade has been
+   * pending for the given time. A batch of one trade syncs every trade as it is made.
+   *
+   * @param tradesPerSync   the number of trades after which the logs are synced
+   * @param syncDelayMillis the time (in milliseconds) after which a pending trade is synced
+   * @throws IllegalArgumentException if the number of trades is not positive, or if the time is
+   *                                  negative
+   */
+  public PortfolioModel(int tradesPerSync, long syncDelayMillis)
+          throws IllegalArgumentException {
+    this(PortfolioFileFormat.CsvFiles, tradesPerSync, syncDelayMillis);
+  }
+
+  /**
+   * Create a new PortfolioModel initialized with an empty list of portfolios, which writes the
+   * snapshots of the portfolios in the given format, and syncs the trades logged to the portfolio
+   * files as described by {@link #PortfolioModel(int, long)}. Portfolios stored in either format
+   * are retrieved.
+   *
+   * @param snapshotFormat  the format in which the portfolios' snapshots are written
+   * @param tradesPerSync   the number of trades after which the logs are synced
+   * @param syncDelayMillis the time (in milliseconds) after which a pending trade is synced
+   * @throws IllegalArgumentException if the number of trades is not positive, or if the time is
+   *                                  negative
+   */
+  public PortfolioModel(PortfolioFileFormat snapshotFormat, int tradesPerSync,
+                        long syncDelayMillis) throws IllegalArgumentException {
+    this(snapshotFormat, tradesPerSync, syncDelayMillis, defaultPortfolioMemoryBudget);
+  }
+
+  /**
+   * Create a new PortfolioModel initialized with an empty list of portfolios, as described by
+   * {@link #PortfolioModel(PortfolioFileFormat, int, long)}, which keeps the portfolios it has
+   * in memory within the given memory budget. When the budget is exceeded, the least recently
+   * used portfolios are evicted from memory, and read from their files again when they are next
+   * used. The other constructors use a budget of 64 MiB.
+   *
+   * @param snapshotFormat        the format in which the portfolios' snapshots are written
+   * @param tradesPerSync         the number of trades after which the logs are synced
+   * @param syncDelayMillis       the time (in milliseconds) after which a pending trade is
+   *                              synced
+   * @param portfolioMemoryBudget the estimated number of bytes the portfolios in memory may use
+   * @throws IllegalArgumentException if the number of trades is not positive, if the time is
+   *                                  negative, or if the memory budget is not positive
+   */
+  public PortfolioModel(PortfolioFileFormat snapshotFormat, int tradesPerSync,
+                        long syncDelayMillis, long portfolioMemoryBudget)
+          throws IllegalArgumentException {
+    this.snapshotFormat = snapshotFormat;
     dataStore = new StockDataStore();
-    portfolios = new ArrayList<>();
+    portfolioNames = new ArrayList<>();
+    portfolioIds = new ConcurrentHashMap<>();
+    residentPortfolios = new PortfolioCache(portfolioMemoryBudget,
+        pfName -> PortfolioModelFileUtility.readStoredPortfolio(pfName, portfoliosDirectory,
+                dataStore));
+    transactionLogSyncer = new TransactionLogSyncer(portfoliosDirectory, tradesPerSync,
+            syncDelayMillis);
   }
 
   @Override
@@ -58,10 +142,7 @@ public class PortfolioModel implements IModel {
     }
 
     // If portfolio name already exists
-    if (!portfolios.isEmpty()
-            && portfolios
-            .stream()
-            .anyMatch(p -> p.getPortfolioName().equals(portfolioName))) {
+    if (portfolioIds.containsKey(portfolioName)) {
       throw new FileAlreadyExistsException("The given portfolio name " + "'"
               + portfolioName + "'" + " cannot be added because " + "it already exists.");
     }
@@ -82,8 +163,12 @@ public class PortfolioModel implements IModel {
         throw e;
       }
 
-      //Add object to portfolio list
-      portfolios.add(pf);
+      //Add object to portfolio list, unless a portfolio with the same name was added since the
+      //check above, whose files must not be overwritten
+      if (!addPortfolio(pf)) {
+        throw new FileAlreadyExistsException("The given portfolio name " + "'"
+                + portfolioName + "'" + " cannot be added because " + "it already exists.");
+      }
 
       HashMap<LocalDate, Double> costBasisMap = pf.getCostBasisMap();
 
@@ -91,7 +176,7 @@ public class PortfolioModel implements IModel {
       PortfolioModelFileUtility.writePortfolioToFile(pf,
               portfolioName,
               this.portfoliosDirectory,
-              true, costBasisMap);
+              true, costBasisMap, snapshotFormat);
 
     } else {
       throw new IllegalArgumentException("The given file extension is not supported.");
@@ -107,16 +192,11 @@ public class PortfolioModel implements IModel {
                                   String purchaseDate) {
     try {
       IStock stockToBeAdded = new Stock(stockName, stockQuantity, purchaseDate);
-      for (IPortfolio selectedPortfolio : portfolios) {
-        if (portfolioName.equals(selectedPortfolio.getPortfolioName())) {
-          selectedPortfolio.addStock(dataStore, stockToBeAdded, commissionFee);
-          HashMap<LocalDate, Double> costBasisMap = selectedPortfolio.getCostBasisMap();
-          PortfolioModelFileUtility.writePortfolioToFile(selectedPortfolio,
-                  selectedPortfolio.getPortfolioName(),
-                  this.portfoliosDirectory,
-                  false,
-                  costBasisMap);
-        }
+      IPortfolio selectedPortfolio = getPortfolio(portfolioName);
+      if (selectedPortfolio != null) {
+        double costBasisAmount = selectedPortfolio.addStock(dataStore, stockToBeAdded,
+                commissionFee);
+        logTransaction(selectedPortfolio, stockToBeAdded, costBasisAmount);
       }
     } catch (NoSuchElementException | IllegalArgumentException e) {
       throw e;
@@ -129,17 +209,14 @@ public class PortfolioModel implements IModel {
   public double getPortfolioValue(String portfolioName, LocalDate date)
           throws IndexOutOfBoundsException {
     double portfolioValue = 0;
-    if (LocalDate.parse(date.toString(), DateTimeFormatter.ofPattern("yyyy-MM-dd"))
-            .isAfter(LocalDate.now())) {
+    if (date.isAfter(LocalDate.now())) {
       throw new IllegalArgumentException("The entered date is invalid. Please enter a valid date.");
     }
     // get the portfolio value for the specific portfolio
     try {
-      for (IPortfolio pf : portfolios) {
-        if (portfolioName.equals(pf.getPortfolioName())) {
-          portfolioValue = pf.getPortfolioValue(dataStore, date);
-          break;
-        }
+      IPortfolio pf = getPortfolio(portfolioName);
+      if (pf != null) {
+        portfolioValue = pf.getPortfolioValue(dataStore, date);
       }
     } catch (NoSuchElementException exception) {
       throw new NoSuchElementException(exception.getMessage());
@@ -147,6 +224,40 @@ public class PortfolioModel implements IModel {
     return portfolioValue;
   }
 
+  @Override
+  public double[][] getPortfolioValues(String[] portfolioNames, LocalDate[] dates)
+          throws IllegalArgumentException, NoSuchElementException {
+    for (LocalDate date : dates) {
+      if (date.isAfter(LocalDate.now())) {
+        throw new IllegalArgumentException("The entered date is invalid. Please enter a valid "
+                + "date.");
+      }
+    }
+
+    for (String portfolioName : portfolioNames) {
+      if (!portfolioIds.containsKey(portfolioName)) {
+        throw new IllegalArgumentException("The given portfolio '" + portfolioName
+                + "' does not exist.");
+      }
+    }
+
+    // the portfolios that are not in memory are read from their files concurrently
+    IPortfolio[] selectedPortfolios = new IPortfolio[portfolioNames.length];
+    IntStream.range(0, portfolioNames.length).parallel().forEach(i ->
+            selectedPortfolios[i] = residentPortfolios.get(portfolioNames[i]));
+
+    // value every (portfolio, date) pair as a separate task on the common fork/join pool;
+    // the portfolios are only read, and the data store supports concurrent price lookups
+    double[][] portfolioValues = new double[portfolioNames.length][dates.length];
+    IntStream.range(0, portfolioNames.length * dates.length).parallel().forEach(cell -> {
+      int portfolio = cell / dates.length;
+      int date = cell % dates.length;
+      portfolioValues[portfolio][date] = selectedPortfolios[portfolio]
+              .getPortfolioValue(dataStore, dates[date]);
+    });
+    return portfolioValues;
+  }
+
   @Override
   public List<IStock> examinePortfolioForADate(String portfolioName, LocalDate compositionDate)
           throws IndexOutOfBoundsException {
@@ -154,16 +265,10 @@ public class PortfolioModel implements IModel {
       throw new IllegalArgumentException("Examine date cannot be a future date");
     }
 
-    List<IStock> stockList = null;
-
-    for (IPortfolio portfolio : portfolios) {
-      if (portfolioName.equals(portfolio.getPortfolioName())) {
-        stockList = portfolio.getStockListOnAndBeforeCompositionDate(compositionDate);
-        break;
-      }
-    }
-
-    return stockList;
+    IPortfolio portfolio = getPortfolio(portfolioName);
+    return portfolio == null
+            ? null
+            : portfolio.getStockListOnAndBeforeCompositionDate(compositionDate);
   }
 
   @Override
@@ -172,44 +277,45 @@ public class PortfolioModel implements IModel {
   }
 
   @Override
-  public List<String> getPortfolioNames() {
-    return portfolios.stream().map(pf -> pf.getPortfolioName()).collect(Collectors.toList());
+  public synchronized List<String> getPortfolioNames() {
+    return new ArrayList<>(portfolioNames);
   }
 
   @Override
-  public void deleteAllPortfolioFiles() {
+  public synchronized void deleteAllPortfolioFiles() {
     PortfolioModelFileUtility.deleteDirectory(new File(portfoliosDirectory));
-    this.portfolios.clear();
+    this.portfolioIds.clear();
+    this.portfolioNames.clear();
+    this.residentPortfolios.clear();
   }
 
   @Override
-  public boolean isPortfolioListEmpty() {
-    return portfolios.size() == 0;
+  public synchronized boolean isPortfolioListEmpty() {
+    return portfolioNames.size() == 0;
   }
 
   @Override
   public void retrieveExistingPortfolios() {
-    // Get all the CSV files in the portfolios storage directory
-    List<File> portfolioFiles = PortfolioModelFileUtility
-            .getCsvFilesInDirectory(new File(portfoliosDirectory));
-
-    // loop over all the existing portfolio files and read them
-    if (portfolioFiles != null) {
-      for (File file : portfolioFiles) {
-        IPortfolio storedPortfolio;
-        String pfName = PortfolioModelFileUtility.getFileNameWithoutExtension(file);
-        storedPortfolio = PortfolioModelFileUtility.readCsvAsPortfolio(pfName,
-                file,
-                dataStore, commissionFee, false);
-        portfolios.add(storedPortfolio);
-        HashMap<LocalDate, Double> costBasisMap = PortfolioModelFileUtility
-                .readCsvForCostBasis(portfoliosDirectory,
-                        pfName);
-        storedPortfolio.setCostBasisMap(costBasisMap);
+    // finish the writes that were interrupted before reading the files
+    PortfolioModelFileUtility.recoverInterruptedWrites(portfoliosDirectory);
+
+    // Get the names of all the portfolios in the portfolios storage directory
+    List<String> storedPortfolioNames = PortfolioModelFileUtility
+            .getStoredPortfolioNames(new File(portfoliosDirectory));
+
+    // only register the portfolios in file order, each one is read when it is first used
+    if (storedPortfolioNames != null) {
+      for (String pfName : storedPortfolioNames) {
+        addPortfolioName(pfName);
       }
     }
   }
 
+  @Override
+  public void flushPortfolioFiles() {
+    transactionLogSyncer.sync();
+  }
+
   @Override
   public void setCommissionFee(float commissionFee, float feeReductionPercentage)
           throws IllegalArgumentException {
@@ -233,18 +339,16 @@ public class PortfolioModel implements IModel {
     if (costBasisDate.isAfter(LocalDate.now())) {
       throw new IllegalArgumentException("Cost basis date cannot be a future date");
     }
-    for (IPortfolio selectedPortfolio : portfolios) {
-      if (portfolioName.equals(selectedPortfolio.getPortfolioName())) {
-        costBasisValue = selectedPortfolio.getCostBasis(costBasisDate);
-        break;
-      }
+    IPortfolio selectedPortfolio = getPortfolio(portfolioName);
+    if (selectedPortfolio != null) {
+      costBasisValue = selectedPortfolio.getCostBasis(costBasisDate);
     }
     return costBasisValue;
   }
 
   @Override
   public boolean isValidTickerSymbol(String stockTickerSymbol, int portfolioNumber) {
-    IPortfolio selectedPortfolio = portfolios.get(portfolioNumber - 1);
+    IPortfolio selectedPortfolio = getPortfolio(getPortfolioName(portfolioNumber));
     List<IStock> stockList = selectedPortfolio.getStocksList();
 
     for (IStock stock : stockList) {
@@ -259,11 +363,12 @@ public class PortfolioModel implements IModel {
   public boolean isValidDateInPortfolio(String date,
                                         int portfolioNumber,
                                         String stockTickerSymbol) {
-    IPortfolio selectedPortfolio = portfolios.get(portfolioNumber - 1);
+    IPortfolio selectedPortfolio = getPortfolio(getPortfolioName(portfolioNumber));
     List<IStock> stockList = selectedPortfolio.getStocksList();
+    LocalDate purchaseDate = parsePurchaseDate(date);
 
     for (IStock stock : stockList) {
-      if (stock.getPurchaseDate().equals(date)
+      if (stock.getPurchaseDate().equals(purchaseDate)
               && stock.getStockName().equals(stockTickerSymbol)) {
         return true;
       }
@@ -274,12 +379,13 @@ public class PortfolioModel implements IModel {
   @Override
   public boolean isValidStockQuantityForADate(int quantity, String date,
                                               int portfolioNumber, String stockTickerSymbol) {
-    IPortfolio selectedPortfolio = portfolios.get(portfolioNumber - 1);
+    IPortfolio selectedPortfolio = getPortfolio(getPortfolioName(portfolioNumber));
     List<IStock> stockList = selectedPortfolio.getStocksList();
+    LocalDate purchaseDate = parsePurchaseDate(date);
 
     for (IStock stock : stockList) {
-      if (stock.getPurchaseDate().equals(date)
-              && (quantity <= stock.getStockQuantity())
+      if (stock.getPurchaseDate().equals(purchaseDate)
+              && (quantity * Stock.QUANTITY_SCALE <= stock.getQuantityUnits())
               && stock.getStockName().equals(stockTickerSymbol)) {
         return true;
       }
@@ -292,52 +398,35 @@ public class PortfolioModel implements IModel {
                                       String stockTickerSymbol,
                                       double quantity,
                                       LocalDate stockSellDate) {
-    for (IPortfolio selectedPortfolio : portfolios) {
-      if (selectedPortfolio.getPortfolioName().equals(portfolioName)) {
-
-        double totalStockQuantity = selectedPortfolio.getStocksList()
-                .stream()
-                .filter(s -> s.getStockName().equals(stockTickerSymbol)
-                        && (!LocalDate.parse(s.getPurchaseDate())
-                        .isAfter(stockSellDate)))
-                .mapToDouble(s -> s.getStockQuantity())
-                .sum();
-        if (totalStockQuantity <= 0) {
-          throw new IllegalArgumentException("Stocks need to be "
-                  + "purchased before they can be sold.");
-        }
-        if (quantity > totalStockQuantity) {
-          throw new IllegalArgumentException("Please enter valid stock quantity.");
-        }
+    IPortfolio selectedPortfolio = getPortfolio(portfolioName);
+    if (selectedPortfolio != null) {
+      long totalQuantityUnits = selectedPortfolio.getStocksList()
+              .stream()
+              .filter(s -> s.getStockName().equals(stockTickerSymbol)
+                      && (!s.getPurchaseDate().isAfter(stockSellDate)))
+              .mapToLong(s -> s.getQuantityUnits())
+              .sum();
+      if (totalQuantityUnits <= 0) {
+        throw new IllegalArgumentException("Stocks need to be "
+                + "purchased before they can be sold.");
+      }
+      if (Stock.toQuantityUnits(quantity) > totalQuantityUnits) {
+        throw new IllegalArgumentException("Please enter valid stock quantity.");
+      }
 
-        //double updatedStockQuantity = totalStockQuantity - quantity;
-        selectedPortfolio.addStock(dataStore,
-                new Stock(stockTickerSymbol,
-                        -(float) quantity, stockSellDate.toString()),
-                commissionFee);
-        updateCommissionFee();
+      //double updatedStockQuantity = totalStockQuantity - quantity;
+      IStock soldStock = new Stock(stockTickerSymbol, -(float) quantity, stockSellDate);
+      double costBasisAmount = selectedPortfolio.addStock(dataStore, soldStock, commissionFee);
+      updateCommissionFee();
 
-        PortfolioModelFileUtility.writePortfolioToFile(selectedPortfolio,
-                selectedPortfolio.getPortfolioName(),
-                portfoliosDirectory,
-                false,
-                selectedPortfolio.getCostBasisMap());
-      }
-      break;
+      logTransaction(selectedPortfolio, soldStock, costBasisAmount);
     }
   }
 
   @Override
   public List<IStock> examinePortfolio(String portfolioName) {
-    List<IStock> stockList = null;
-
-    for (IPortfolio portfolio : portfolios) {
-      if (portfolioName.equals(portfolio.getPortfolioName())) {
-        stockList = portfolio.getStocksList();
-        return stockList;
-      }
-    }
-    return null;
+    IPortfolio portfolio = getPortfolio(portfolioName);
+    return portfolio == null ? null : portfolio.getStocksList();
   }
 
   @Override
@@ -345,6 +434,36 @@ public class PortfolioModel implements IModel {
                                                                LocalDate startDate,
                                                                LocalDate endDate)
           throws IllegalArgumentException {
+    validatePerformanceDates(startDate, endDate);
+
+    IPortfolio selectedPortfolio = getPortfolio(portfolioName);
+    if (selectedPortfolio != null) {
+      return selectedPortfolio.getPerformanceData(startDate, endDate, this.dataStore);
+    } else {
+      throw new IllegalArgumentException("The given portfolio does not exist.");
+    }
+  }
+
+  @Override
+  public IPortfolioTimeSeries getPortfolioPerformanceSeries(String portfolioName,
+                                                            LocalDate startDate,
+                                                            LocalDate endDate,
+                                                            PerformanceStep step,
+                                                            PerformanceAggregation aggregation)
+          throws IllegalArgumentException {
+    validatePerformanceDates(startDate, endDate);
+
+    IPortfolio selectedPortfolio = getPortfolio(portfolioName);
+    if (selectedPortfolio != null) {
+      return selectedPortfolio.getPerformanceSeries(startDate, endDate, step, aggregation,
+              this.dataStore);
+    } else {
+      throw new IllegalArgumentException("The given portfolio does not exist.");
+    }
+  }
+
+  private void validatePerformanceDates(LocalDate startDate, LocalDate endDate)
+          throws IllegalArgumentException {
     // if end date < start date, throw error
     if (endDate.isBefore(startDate)) {
       throw new IllegalArgumentException("The end date cannot come before start date for computing"
@@ -365,37 +484,19 @@ public class PortfolioModel implements IModel {
     if (LocalDate.now().isEqual(startDate)) {
       throw new IllegalArgumentException("The start date cannot be today's date");
     }
-
-    IPortfolio selectedPortfolio = portfolios
-            .stream()
-            .filter(p -> p.getPortfolioName().equals(portfolioName))
-            .findFirst()
-            .orElse(null);
-    if (selectedPortfolio != null) {
-      return selectedPortfolio.getPerformanceData(startDate, endDate, this.dataStore);
-    } else {
-      throw new IllegalArgumentException("The given portfolio does not exist.");
-    }
   }
 
   @Override
   public List<IStock> getStockFromPortfolio(String pfName) {
-    List<IStock> stockNames = null;
-    for (IPortfolio pf : portfolios) {
-      if (pfName.equals(pf.getPortfolioName())) {
-        stockNames = pf.getStocksList();
-        break;
-      }
-    }
-    return stockNames;
+    IPortfolio pf = getPortfolio(pfName);
+    return pf == null ? null : pf.getStocksList();
   }
 
   @Override
   public float calculateNumberOfShares(String stockName, LocalDate purchaseDate,
                                        float amountToBeInvestedForStock) {
     double stockValueOnADate = dataStore.getStockValue(stockName, purchaseDate);
-    float numberOfShares = (float) (amountToBeInvestedForStock / stockValueOnADate);
-    return (float) (Math.round(numberOfShares * 100.0) / 100.0);
+    return getNumberOfShares(stockValueOnADate, amountToBeInvestedForStock);
   }
 
   @Override
@@ -409,50 +510,149 @@ public class PortfolioModel implements IModel {
       throw new IllegalArgumentException("The start date cannot be on or after the end date.");
     }
 
-    IPortfolio newPortfolio = new Portfolio(portfolioName);
-    this.portfolios.add(newPortfolio);
+    if (portfolioIds.containsKey(portfolioName)) {
+      throw new IllegalArgumentException("The given portfolio name '" + portfolioName
+              + "' cannot be added because it already exists.");
+    }
+    String[] stockNames = stockProportions.keySet().toArray(new String[0]);
+    TickerSymbolTable tickerSymbols = dataStore.getTickerSymbolTable();
+    int[] tickerIds = new int[stockNames.length];
+    for (int i = 0; i < stockNames.length; i++) {
+      tickerIds[i] = tickerSymbols.getId(stockNames[i]);
+      if (tickerIds[i] == TickerSymbolTable.NO_ID) {
+        throw new IllegalArgumentException("The program does not support the "
+                + "provided stock name '" + stockNames[i] + "'");
+      }
+    }
 
-    // iterate over the time period intervals
+    // collect the investment dates of the time period intervals
+    List<LocalDate> investmentDateList = new ArrayList<>();
     LocalDate currentInvestmentDate = dataStore.getNextValidMarketDate(startDate);
     while (currentInvestmentDate.isBefore(endDate) || currentInvestmentDate.isEqual(endDate)) {
-      for (String stock : stockProportions.keySet()) {
-        float numberOfShares = calculateNumberOfShares(stock, currentInvestmentDate,
-                ((stockProportions.get(stock) / 100) * amountToBeInvested));
-        addStockToPortfolio(portfolioName, stock, numberOfShares, currentInvestmentDate.toString());
-      }
-
+      investmentDateList.add(currentInvestmentDate);
       currentInvestmentDate = dataStore.getNextValidMarketDate(
               currentInvestmentDate.plusDays(numberOfDays));
     }
+    LocalDate[] investmentDates = investmentDateList.toArray(new LocalDate[0]);
+
+    // look every stock's prices up in a single pass, and build the lots and the cost basis of
+    // the whole plan from those prices; every lot of the plan has a distinct stock and date, so
+    // the lots are not searched for duplicates, and each adds its price and fee to the cost basis
+    double[][] stockValues = dataStore.getStockValues(tickerIds, investmentDates);
+    List<IStock> stocks = new ArrayList<>(investmentDates.length * stockNames.length);
+    Map<LocalDate, Double> costBasisMap = new LinkedHashMap<>();
+    for (int j = 0; j < investmentDates.length; j++) {
+      for (int i = 0; i < stockNames.length; i++) {
+        double stockValue = stockValues[i][j];
+        if (Double.isNaN(stockValue)) {
+          // look the price up individually to report the missing price
+          stockValue = dataStore.getStockValue(stockNames[i], investmentDates[j]);
+        }
+        float numberOfShares = getNumberOfShares(stockValue,
+                (stockProportions.get(stockNames[i]) / 100) * amountToBeInvested);
+        stocks.add(new Stock(stockNames[i], numberOfShares, investmentDates[j]));
+        costBasisMap.merge(investmentDates[j], stockValue + commissionFee, Double::sum);
+        updateCommissionFee();
+      }
+    }
+    IPortfolio newPortfolio = new Portfolio(portfolioName, dataStore, stocks, costBasisMap);
 
-    HashMap<LocalDate, Double> costBasisMap = newPortfolio.getCostBasisMap();
+    if (!addPortfolio(newPortfolio)) {
+      throw new IllegalArgumentException("The given portfolio name '" + portfolioName
+              + "' cannot be added because it already exists.");
+    }
 
-    //Write to file storage
+    //Write to file storage, once for the whole plan
     PortfolioModelFileUtility.writePortfolioToFile(newPortfolio,
             portfolioName,
             this.portfoliosDirectory,
-            false, costBasisMap);
+            false, newPortfolio.getCostBasisMap(), snapshotFormat);
   }
 
   @Override
   public void balancePortfolio(String pfName, LocalDate d, Map<String, Double> ds)
           throws ParseException {
-    int pfIndex = -1;
-    for (int i = 0; i < this.portfolios.size(); i++) {
-      if (Objects.equals(this.portfolios.get(i).getPortfolioName(), pfName)) {
-        pfIndex = i;
-        break;
-      }
-    }
-    if (pfIndex == -1) {
+    IPortfolio selectedPortfolio = getPortfolio(pfName);
+    if (selectedPortfolio == null) {
       throw new IllegalArgumentException("No Such portfolio exists!");
     }
+    // log each lot added by the rebalance as it is added, since the portfolio is read from its
+    // files again once it is evicted
     PortfolioVisitor<IPortfolio> visitor = new PortfolioBalanceVisitor<>(d,
-            this.dataStore, ds, x -> x);
-    this.portfolios.set(pfIndex, visitor.apply(this.portfolios.get(pfIndex)));
+            this.dataStore, ds, x -> x,
+            (lot, costBasisAmount) -> logTransaction(selectedPortfolio, lot, costBasisAmount));
+    visitor.apply(selectedPortfolio);
+  }
+
+  private IPortfolio getPortfolio(String portfolioName) {
+    if (!portfolioIds.containsKey(portfolioName)) {
+      return null;
+    }
+    // a registered portfolio that is not in memory is read from its files
+    return residentPortfolios.get(portfolioName);
+  }
+
+  private synchronized boolean addPortfolio(IPortfolio portfolio) {
+    if (!addPortfolioName(portfolio.getPortfolioName())) {
+      return false;
+    }
+    residentPortfolios.put(portfolio);
+    return true;
+  }
+
+  private synchronized String getPortfolioName(int portfolioNumber) {
+    // the list of portfolio names is only accessed while holding the model's lock
+    return portfolioNames.get(portfolioNumber - 1);
+  }
+
+  private synchronized boolean addPortfolioName(String portfolioName) {
+    if (portfolioIds.containsKey(portfolioName)) {
+      return false;
+    }
+    // the id of a portfolio is its position in the list of portfolio names, and the name is
+    // added to the list before its id is published to the index
+    portfolioNames.add(portfolioName);
+    portfolioIds.put(portfolioName, portfolioNames.size() - 1);
+    return true;
+  }
+
+  private void logTransaction(IPortfolio portfolio, IStock stock, double costBasisAmount) {
+    // append the trade to the portfolio's transaction log, instead of rewriting its files; the
+    // amount is the one the trade added to the cost basis, so a replay adds exactly the same
+    PortfolioModelFileUtility.appendTransactionToLog(stock,
+            costBasisAmount,
+            portfolio.getPortfolioName(),
+            this.portfoliosDirectory);
+    transactionLogSyncer.addPendingTrade(portfolio.getPortfolioName());
+    // measure the memory used by the portfolio again, now that it has one more stock
+    residentPortfolios.put(portfolio);
+
+    if (PortfolioModelFileUtility.isTransactionLogCompactionDue(portfolio.getPortfolioName(),
+            this.portfoliosDirectory)) {
+      PortfolioModelFileUtility.writePortfolioToFile(portfolio,
+              portfolio.getPortfolioName(),
+              this.portfoliosDirectory,
+              false,
+              portfolio.getCostBasisMap(),
+              snapshotFormat);
+    }
+  }
+
+  private static float getNumberOfShares(double stockValue, float amountToBeInvested) {
+    float numberOfShares = (float) (amountToBeInvested / stockValue);
+    return (float) (Math.round(numberOfShares * 100.0) / 100.0);
   }
 
   private void updateCommissionFee() {
     this.commissionFee = this.commissionFee * (1 - (this.commissionFeeReductionPercentage / 100));
   }
+
+  private static LocalDate parsePurchaseDate(String date) {
+    // a date that is not a valid purchase date does not match any stock
+    try {
+      return LocalDate.parse(date, purchaseDateFormatter);
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
 }
@@ -1,21 +1,31 @@
 package model;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.regex.Pattern;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import model.stockdatastore.IStockDataStore;
@@ -26,13 +36,25 @@ import model.stockdatastore.IStockDataStore;
  * Some examples of the operations that this helper class provides are:
  * "get a file's extension", "read a CSV file as an IPortfolio object", "write an IPortfolio
  * object to file", "delete a directory", and more.
+ * A stored portfolio consists of a snapshot (the portfolio's CSV file and its cost basis file)
+ * and a transaction log. Every trade made after the snapshot was written is appended to the log,
+ * and the log is compacted into a new snapshot once it grows larger than the snapshot.
+ * A snapshot's files are first written to staged files, and are then committed together
+ * through a commit manifest that lists them, so a crash leaves either the old or the new
+ * snapshot in place. A snapshot is stored either as CSV files or as a single binary portfolio
+ * file (see BinaryPortfolioFile), and the CSV files are read whenever there is no valid binary
+ * file.
  */
 public final class PortfolioModelFileUtility {
   private static final String extensionRegex = "\\.";
   private static final String portfolioFileExtension = ".csv";
   private static final String costBasisExtension = "-costBasis.txt";
-  private static final String validStockQuantityPattern = "^[1-9][0-9]*(\\.[0]+)?$";
-
+  private static final String transactionLogExtension = "-transactions.log";
+  private static final String commitManifestExtension = "-commit.manifest";
+  private static final String stagedFileExtension = ".tmp";
+  private static final String committedFileKeyword = "commit ";
+  private static final String removedFileKeyword = "remove ";
+  private static final long transactionLogCompactionThreshold = 64 * 1024;
 
   /**
    * Get the extension of a given file.
@@ -82,38 +104,28 @@ public final class PortfolioModelFileUtility {
                                               IStockDataStore dataStore, float commissionFee,
                                               boolean isNewPortfolio)
           throws IllegalArgumentException {
-    try {
-      BufferedReader br = new BufferedReader(new FileReader(file));
-      String line;
+    try (CsvRecordReader reader = new CsvRecordReader(new FileReader(file))) {
       IPortfolio pf = new Portfolio(portfolioName);
 
-      while ((line = br.readLine()) != null) {
-        String[] values = line.split(",");
+      while (reader.nextRecord()) {
         //Check if values length = 3
-        if (values.length != 3) {
+        if (reader.getFieldCount() != 3) {
           throw new IllegalArgumentException("File does not contain all the required values");
         }
-        String stockSymbol = values[0].trim();
-        String stockQuantity = values[1].trim();
-        String stockPurchaseDate = values[2].trim();
+        String stockSymbol = reader.getString(0);
 
         //Check if values quantity is fractional
         if (isNewPortfolio) {
-          if (!verifyNonFractionalStockQuantity(stockQuantity)) {
+          if (!reader.isWholeNumber(1)) {
             throw new IllegalArgumentException("Invalid stock quantity for "
                     + stockSymbol + ".");
           }
         }
 
         try {
-          IStock stock;
-          try {
-            stock = new Stock(stockSymbol,
-                    Float.parseFloat(stockQuantity),
-                    stockPurchaseDate);
-          } catch (NumberFormatException e) {
-            throw e;
-          }
+          float stockQuantity = reader.getFloat(1);
+          LocalDate stockPurchaseDate = LocalDate.ofEpochDay(reader.getEpochDay(2));
+          IStock stock = new Stock(stockSymbol, stockQuantity, stockPurchaseDate);
 
           pf.addStock(dataStore, stock, commissionFee);
         } catch (DateTimeParseException e) {
@@ -130,10 +142,6 @@ public final class PortfolioModelFileUtility {
     }
   }
 
-  private static boolean verifyNonFractionalStockQuantity(String stockQuantity) {
-    return Pattern.matches(validStockQuantityPattern, String.valueOf(stockQuantity));
-  }
-
   /**
    * Read the stored cost basis file while retrieving the existing portfolios.
    *
@@ -148,15 +156,11 @@ public final class PortfolioModelFileUtility {
           throws IllegalArgumentException {
     HashMap<LocalDate, Double> costBasisMap = new HashMap<>();
     portfolioName += costBasisExtension;
-    try {
-      File f = new File(Paths.get(portfolioFilesDirectory, portfolioName).toUri());
-      BufferedReader br = new BufferedReader(new FileReader(f));
-      String line;
-      while ((line = br.readLine()) != null) {
-        String[] values = line.split(",");
-        LocalDate date = LocalDate.parse(values[0].trim(),
-                DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-        Double costBasisValue = Double.valueOf(values[1].trim());
+    File f = new File(Paths.get(portfolioFilesDirectory, portfolioName).toUri());
+    try (CsvRecordReader reader = new CsvRecordReader(new FileReader(f))) {
+      while (reader.nextRecord()) {
+        LocalDate date = LocalDate.ofEpochDay(reader.getEpochDay(0));
+        double costBasisValue = reader.getDouble(1);
         costBasisMap.put(date, costBasisValue);
       }
     } catch (DateTimeParseException e) {
@@ -180,8 +184,28 @@ public final class PortfolioModelFileUtility {
                                           String portfolioFilesDirectory,
                                           boolean isNewPortfolio,
                                           HashMap<LocalDate, Double> costBasisMap) {
+    writePortfolioToFile(portfolio, portfolioName, portfolioFilesDirectory, isNewPortfolio,
+            costBasisMap, PortfolioFileFormat.CsvFiles);
+  }
+
+  /**
+   * Write a given IPortfolio object to a file in the given snapshot format. The files of the
+   * portfolio's previous snapshot in the other format are removed by the same commit.
+   *
+   * @param portfolio               the portfolio object to be written to file
+   * @param portfolioName           the name of portfolio to be written to file
+   * @param portfolioFilesDirectory the directory where the portfolio's file is to be created
+   * @param fileFormat              the format in which the portfolio's snapshot is written
+   */
+  public static void writePortfolioToFile(IPortfolio portfolio,
+                                          String portfolioName,
+                                          String portfolioFilesDirectory,
+                                          boolean isNewPortfolio,
+                                          HashMap<LocalDate, Double> costBasisMap,
+                                          PortfolioFileFormat fileFormat) {
     //Appending cost basis file extension to create new file for cost basis
     String costBasis = portfolioName + costBasisExtension;
+    String binarySnapshot = portfolioName + BinaryPortfolioFile.FILE_EXTENSION;
 
     //Appending file extension to portfolio name
     portfolioName += portfolioFileExtension;
@@ -194,43 +218,266 @@ public final class PortfolioModelFileUtility {
     try {
       File f = new File(Paths.get(portfolioFilesDirectory, portfolioName).toUri());
       File costBasisFile = new File(Paths.get(portfolioFilesDirectory, costBasis).toUri());
+      File binaryFile = new File(Paths.get(portfolioFilesDirectory, binarySnapshot).toUri());
 
-      if (f.exists() && isNewPortfolio) {
+      if ((f.exists() || binaryFile.exists()) && isNewPortfolio) {
         throw new FileAlreadyExistsException("The portfolio with same already exists");
       }
 
-      if (isNewPortfolio) {
-        f.createNewFile();
-        costBasisFile.createNewFile();
+      // the snapshot's files are staged next to the live ones, so a crash never leaves them
+      // half written, and each line of the manifest names a file to be committed or removed,
+      // after a keyword, so the name of a file is never read as an instruction
+      String manifestContents;
+      if (fileFormat == PortfolioFileFormat.BinaryFiles) {
+        writeFileDurably(getStagedFile(binaryFile),
+                BinaryPortfolioFile.encode(portfolio.getStocksList(), costBasisMap));
+        manifestContents = committedFileKeyword + binaryFile.getName() + "\n"
+                + removedFileKeyword + f.getName() + "\n"
+                + removedFileKeyword + costBasisFile.getName() + "\n";
+      } else {
+        writeCsvSnapshot(portfolio, f, costBasisFile, costBasisMap);
+        manifestContents = committedFileKeyword + f.getName() + "\n"
+                + committedFileKeyword + costBasisFile.getName() + "\n"
+                + removedFileKeyword + binaryFile.getName() + "\n";
+      }
+
+      // the manifest commits the files together: once it is in place, the write is completed
+      // even if it is interrupted before the staged files are renamed
+      File manifest = getCommitManifestFile(portfolioFilesDirectory,
+              portfolio.getPortfolioName());
+      File stagedManifest = getStagedFile(manifest);
+      writeFileDurably(stagedManifest, manifestContents);
+      moveAtomically(stagedManifest, manifest);
+      syncDirectory(portfoliosDir);
+
+      completeCommit(manifest);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void writeCsvSnapshot(IPortfolio portfolio,
+                                       File f,
+                                       File costBasisFile,
+                                       HashMap<LocalDate, Double> costBasisMap)
+          throws IOException {
+    //Writing stock list to portfolio csv file
+    List<IStock> stockResult = portfolio.getStocksList();
+    StringBuilder result = new StringBuilder();
+    for (IStock s : stockResult) {
+      result.append(s.getStockDataAsCsv());
+      result.append("\n");
+    }
+    writeFileDurably(getStagedFile(f), result.toString());
+
+    //Writing cost basis to cost basis csv file
+    StringBuilder costBasisResult = new StringBuilder();
+    for (LocalDate date : costBasisMap.keySet()) {
+      costBasisResult.append(date);
+      costBasisResult.append(",");
+      costBasisResult.append(costBasisMap.get(date));
+      costBasisResult.append("\n");
+    }
+    writeFileDurably(getStagedFile(costBasisFile), costBasisResult.toString());
+  }
+
+  /**
+   * Complete or undo the portfolio file writes that were interrupted, for example by a crash.
+   * A write whose commit manifest is in place is completed, and the staged files of any other
+   * write are deleted. A trade record that was only partly appended to a transaction log is cut
+   * off, so that the next trade is appended after the last complete record. This must be done
+   * before the portfolios in the directory are read or traded.
+   *
+   * @param portfolioFilesDirectory the directory where the portfolios' files are stored
+   */
+  public static void recoverInterruptedWrites(String portfolioFilesDirectory) {
+    File[] allContents = new File(portfolioFilesDirectory).listFiles();
+    if (allContents == null) {
+      return;
+    }
+
+    try {
+      for (File file : allContents) {
+        if (file.getName().endsWith(commitManifestExtension)) {
+          completeCommit(file);
+        }
+      }
+      for (File file : allContents) {
+        if (file.getName().endsWith(stagedFileExtension)) {
+          file.delete();
+        } else if (file.getName().endsWith(transactionLogExtension) && file.exists()) {
+          // a completed commit has deleted its portfolio's log
+          truncateTornRecord(file);
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Append a single trade of a portfolio to the portfolio's transaction log. The record holds the
+   * stock's data in the portfolio file's format, followed by the amount that the trade added to
+   * the portfolio's cost basis on the stock's purchase date.
+   *
+   * @param stock                   the stock bought (or sold, for a negative quantity)
+   * @param costBasisAmount         the amount added to the cost basis by the trade
+   * @param portfolioName           the name of the portfolio
+   * @param portfolioFilesDirectory the directory where the portfolio's files are stored
+   */
+  public static void appendTransactionToLog(IStock stock,
+                                            double costBasisAmount,
+                                            String portfolioName,
+                                            String portfolioFilesDirectory) {
+    File portfoliosDir = new File(portfolioFilesDirectory);
+    if (!portfoliosDir.exists()) {
+      portfoliosDir.mkdirs();
+    }
+
+    File logFile = getTransactionLogFile(portfolioFilesDirectory, portfolioName);
+    try (BufferedWriter bw = new BufferedWriter(new FileWriter(logFile, true))) {
+      bw.write(stock.getStockDataAsCsv() + "," + costBasisAmount + "\n");
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Force the transaction log of a portfolio to the storage device, so that the trades appended
+   * to it survive a crash of the system.
+   *
+   * @param portfolioName           the name of the portfolio
+   * @param portfolioFilesDirectory the directory where the portfolio's files are stored
+   */
+  public static void syncTransactionLog(String portfolioName, String portfolioFilesDirectory) {
+    File logFile = getTransactionLogFile(portfolioFilesDirectory, portfolioName);
+    if (!logFile.exists()) {
+      // the log was compacted into a snapshot, which was synced when it was written
+      return;
+    }
+
+    try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE)) {
+      channel.force(false);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Force the entries of the given directory to the storage device, so that the files created in
+   * it survive a crash of the system. Directories cannot be synced on every platform, in which
+   * case this does nothing.
+   *
+   * @param directory the directory to be synced
+   */
+  public static void syncDirectory(File directory) {
+    try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException e) {
+      // not supported on this platform
+    }
+  }
+
+  /**
+   * Check if the transaction log of a portfolio should be compacted into a new snapshot, that is,
+   * if the log has grown larger than both the snapshot and a minimum size. This keeps the total
+   * amount of data written for a sequence of trades linear in the number of trades.
+   *
+   * @param portfolioName           the name of the portfolio
+   * @param portfolioFilesDirectory the directory where the portfolio's files are stored
+   * @return true if the portfolio's snapshot should be rewritten, false otherwise
+   */
+  public static boolean isTransactionLogCompactionDue(String portfolioName,
+                                                      String portfolioFilesDirectory) {
+    long logLength = getTransactionLogFile(portfolioFilesDirectory, portfolioName).length();
+    long snapshotLength = new File(Paths.get(portfolioFilesDirectory,
+            portfolioName + portfolioFileExtension).toUri()).length()
+            + new File(Paths.get(portfolioFilesDirectory,
+            portfolioName + costBasisExtension).toUri()).length()
+            + new File(Paths.get(portfolioFilesDirectory,
+            portfolioName + BinaryPortfolioFile.FILE_EXTENSION).toUri()).length();
+    return logLength > Math.max(snapshotLength, transactionLogCompactionThreshold);
+  }
+
+  /**
+   * Read a stored portfolio: its snapshot (binary if present and valid, CSV otherwise), its cost
+   * basis, and the trades of its transaction log.
+   * The stored stocks were validated when they were added to the portfolio, so only their ticker
+   * symbols are checked against the data store, once per symbol, and no stock prices are looked
+   * up. A record of the log that was only partially written is ignored, along with any record
+   * after it.
+   *
+   * @param portfolioName           the name of the portfolio
+   * @param portfolioFilesDirectory the directory where the portfolio's files are stored
+   * @param dataStore               the stock data store containing the information of
+   *                                stock prices and market dates
+   * @return a new IPortfolio instance containing the stored data of the portfolio
+   * @throws IllegalArgumentException if a stored record does not contain the required data
+   *                                  values, or contains a date in an incorrect format, or a stock
+   *                                  symbol that is not supported by the given stock data store
+   */
+  public static IPortfolio readStoredPortfolio(String portfolioName,
+                                               String portfolioFilesDirectory,
+                                               IStockDataStore dataStore)
+          throws IllegalArgumentException {
+    List<IStock> stocks = new ArrayList<>();
+    HashMap<LocalDate, Double> costBasisMap = new HashMap<>();
+    File binaryFile = new File(Paths.get(portfolioFilesDirectory,
+            portfolioName + BinaryPortfolioFile.FILE_EXTENSION).toUri());
+    File portfolioFile = new File(Paths.get(portfolioFilesDirectory,
+            portfolioName + portfolioFileExtension).toUri());
+    File logFile = getTransactionLogFile(portfolioFilesDirectory, portfolioName);
+
+    try {
+      boolean isSnapshotRead = false;
+      if (binaryFile.exists()) {
+        try {
+          BinaryPortfolioFile.read(binaryFile, stocks, costBasisMap);
+          isSnapshotRead = true;
+        } catch (InvalidObjectException e) {
+          // fall back to the CSV snapshot
+          stocks.clear();
+          costBasisMap.clear();
+        }
       }
 
-      //Writing stock list to portfolio csv file
-      List<IStock> stockResult = portfolio.getStocksList();
-      StringBuilder result = new StringBuilder();
-      for (IStock s : stockResult) {
-        result.append(s.getStockDataAsCsv());
-        result.append("\n");
+      if (!isSnapshotRead) {
+        costBasisMap.putAll(readCsvForCostBasis(portfolioFilesDirectory, portfolioName));
+        try (CsvRecordReader reader = new CsvRecordReader(new FileReader(portfolioFile))) {
+          while (reader.nextRecord()) {
+            if (reader.getFieldCount() != 3) {
+              throw new IllegalArgumentException("File does not contain all the required "
+                      + "values");
+            }
+            stocks.add(new Stock(reader.getString(0), reader.getFloat(1),
+                    LocalDate.ofEpochDay(reader.getEpochDay(2))));
+          }
+        }
       }
-      FileWriter fw = new FileWriter(f);
-      BufferedWriter bw = new BufferedWriter(fw);
-      bw.write(result.toString());
-      bw.close();
-
-      //Writing cost basis to cost basis csv file
-      StringBuilder costBasisResult = new StringBuilder();
-      for (LocalDate date : costBasisMap.keySet()) {
-        costBasisResult.append(date);
-        costBasisResult.append(",");
-        costBasisResult.append(costBasisMap.get(date));
-        costBasisResult.append("\n");
+
+      if (logFile.exists()) {
+        // the cost basis of a logged trade is taken from its record rather than recomputed.
+        // Only the records that end with their newline are complete: a trailing record without
+        // one was torn by a crash while it was appended, and may have lost some of its digits
+        String log = Files.readString(logFile.toPath());
+        String completeRecords = log.substring(0, log.lastIndexOf('\n') + 1);
+        try (CsvRecordReader logReader = new CsvRecordReader(
+                new StringReader(completeRecords))) {
+          while (logReader.nextRecord() && logReader.getFieldCount() == 4) {
+            LocalDate purchaseDate = LocalDate.ofEpochDay(logReader.getEpochDay(2));
+            stocks.add(new Stock(logReader.getString(0), logReader.getFloat(1), purchaseDate));
+            costBasisMap.merge(purchaseDate, logReader.getDouble(3), Double::sum);
+          }
+        }
       }
-      fw = new FileWriter(costBasisFile);
-      bw = new BufferedWriter(fw);
-      bw.write(costBasisResult.toString());
-      bw.close();
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException(e);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
+
+    // the portfolio's position ledger rejects the stocks the data store does not support
+    return new Portfolio(portfolioName, dataStore, stocks, costBasisMap);
   }
 
   /**
@@ -269,6 +516,120 @@ public final class PortfolioModelFileUtility {
     return csvFiles;
   }
 
+  private static void completeCommit(File manifest) throws IOException {
+    // move every staged file of the commit into place
+    File directory = manifest.getParentFile();
+    for (String line : Files.readAllLines(manifest.toPath())) {
+      if (line.startsWith(removedFileKeyword)) {
+        // a file of the snapshot's other format, which is replaced by this commit
+        Files.deleteIfExists(new File(directory,
+                line.substring(removedFileKeyword.length())).toPath());
+        continue;
+      }
+      // a line without a keyword names a committed file, as in the manifests of earlier versions
+      String fileName = line.startsWith(committedFileKeyword)
+              ? line.substring(committedFileKeyword.length()) : line;
+      File file = new File(directory, fileName);
+      File stagedFile = getStagedFile(file);
+      if (!fileName.isEmpty() && stagedFile.exists()) {
+        moveAtomically(stagedFile, file);
+      }
+    }
+
+    // the new snapshot contains every logged transaction
+    String manifestName = manifest.getName();
+    String portfolioName = manifestName.substring(0,
+            manifestName.length() - commitManifestExtension.length());
+    getTransactionLogFile(directory.getPath(), portfolioName).delete();
+    syncDirectory(directory);
+    Files.delete(manifest.toPath());
+  }
+
+  private static void truncateTornRecord(File logFile) throws IOException {
+    byte[] log = Files.readAllBytes(logFile.toPath());
+    int end = log.length;
+    while (end > 0 && log[end - 1] != '\n') {
+      end--;
+    }
+    if (end < log.length) {
+      try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE)) {
+        channel.truncate(end);
+        channel.force(true);
+      }
+    }
+  }
+
+  private static void writeFileDurably(File file, String contents) throws IOException {
+    try (FileOutputStream out = new FileOutputStream(file);
+         BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(out))) {
+      bw.write(contents);
+      bw.flush();
+      out.getFD().sync();
+    }
+  }
+
+  private static void writeFileDurably(File file, ByteBuffer contents) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      while (contents.hasRemaining()) {
+        channel.write(contents);
+      }
+      channel.force(true);
+    }
+  }
+
+  private static void moveAtomically(File source, File target) throws IOException {
+    try {
+      Files.move(source.toPath(), target.toPath(),
+              StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private static File getStagedFile(File file) {
+    return new File(file.getPath() + stagedFileExtension);
+  }
+
+  private static File getCommitManifestFile(String portfolioFilesDirectory,
+                                            String portfolioName) {
+    return new File(Paths.get(portfolioFilesDirectory,
+            portfolioName + commitManifestExtension).toUri());
+  }
+
+  private static File getTransactionLogFile(String portfolioFilesDirectory,
+                                            String portfolioName) {
+    return new File(Paths.get(portfolioFilesDirectory,
+            portfolioName + transactionLogExtension).toUri());
+  }
+
+  /**
+   * Get the names of all the portfolios stored in the given directory, in either snapshot format.
+   *
+   * @param directory the directory to be searched
+   * @return the names of the stored portfolios, or null if the directory does not exist
+   */
+  public static List<String> getStoredPortfolioNames(File directory) {
+    if (!directory.exists()) {
+      return null;
+    }
+
+    Set<String> portfolioNames = new LinkedHashSet<>();
+    for (File file : directory.listFiles()) {
+      String fileName = file.getName();
+      if (fileName.endsWith(portfolioFileExtension)) {
+        portfolioNames.add(fileName.substring(0,
+                fileName.length() - portfolioFileExtension.length()));
+      } else if (fileName.endsWith(BinaryPortfolioFile.FILE_EXTENSION)) {
+        portfolioNames.add(fileName.substring(0,
+                fileName.length() - BinaryPortfolioFile.FILE_EXTENSION.length()));
+      }
+    }
+    return new ArrayList<>(portfolioNames);
+  }
+
   /**
    * Get the filename without its extension.
    *
@@ -0,0 +1,64 @@
+package model;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * This class implements the interface IPortfolioTimeSeries over a pair of parallel primitive
+ * arrays of dates (epoch days) and values. A PortfolioTimeSeries is immutable.
+ */
+public class PortfolioTimeSeries implements IPortfolioTimeSeries {
+  private final String portfolioName;
+  private final int[] epochDays;
+  private final double[] values;
+
+  /**
+   * Create a new PortfolioTimeSeries for the given portfolio, containing the first size entries
+   * of the given dates and values.
+   *
+   * @param portfolioName the name of the portfolio whose value is represented by the series
+   * @param epochDays     the dates of the points, as epoch days, in ascending order
+   * @param values        the portfolio's value at each point
+   * @param size          the number of points taken from the given arrays
+   */
+  public PortfolioTimeSeries(String portfolioName, int[] epochDays, double[] values, int size) {
+    this.portfolioName = portfolioName;
+    this.epochDays = Arrays.copyOf(epochDays, size);
+    this.values = Arrays.copyOf(values, size);
+  }
+
+  @Override
+  public String getPortfolioName() {
+    return portfolioName;
+  }
+
+  @Override
+  public int size() {
+    return epochDays.length;
+  }
+
+  @Override
+  public int getEpochDay(int index) {
+    return epochDays[index];
+  }
+
+  @Override
+  public LocalDate getDate(int index) {
+    return LocalDate.ofEpochDay(epochDays[index]);
+  }
+
+  @Override
+  public double getValue(int index) {
+    return values[index];
+  }
+
+  @Override
+  public int[] getEpochDays() {
+    return epochDays.clone();
+  }
+
+  @Override
+  public double[] getValues() {
+    return values.clone();
+  }
+}
@@ -0,0 +1,252 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import model.stockdatastore.IStockDataStore;
+import model.stockdatastore.IStockPriceSeries;
+import model.stockdatastore.TickerSymbolTable;
+
+/**
+ * The PositionLedger class indexes the lots (stocks) of a portfolio by ticker. For each ticker,
+ * the ledger keeps the distinct purchase dates of its lots in ascending order, together with the
+ * running (cumulative) quantity held on each of those dates, so the quantity of a ticker held on
+ * any date is found with a binary search instead of a scan over every lot.
+ * Quantities are kept in exact quantity units (see Stock.QUANTITY_SCALE), so running quantities
+ * do not accumulate rounding errors.
+ * Purchase dates are represented as epoch days (the number of days since 1970-01-01).
+ * Tickers are identified by their ids in the data store's TickerSymbolTable, and the ledger's per
+ * ticker data is kept in an array indexed by that id, so recording a lot hashes its symbol once,
+ * and querying and valuing the positions, which takes each ticker's price series from the data
+ * store by id, does not hash symbols at all. A ledger that is handed a different table numbers
+ * its tickers again with the ids of that table.
+ */
+class PositionLedger {
+  private TickerSymbolTable tickerSymbols;
+  private TickerPositions[] positions;
+  private int[] heldTickerIds;
+  private int heldTickerCount;
+
+  /**
+   * Create a new, empty PositionLedger.
+   */
+  PositionLedger() {
+    this.tickerSymbols = new TickerSymbolTable(Collections.emptyList());
+    this.positions = new TickerPositions[0];
+    this.heldTickerIds = new int[4];
+  }
+
+  /**
+   * Number the tickers of this ledger with the ids of the given ticker symbol table, which is
+   * usually the table of the data store the portfolio is used with. Nothing changes if the
+   * ledger already uses the table.
+   *
+   * @param tickerSymbols the ticker symbol table
+   * @throws IllegalArgumentException if a ticker of the ledger is not in the table
+   */
+  void useTickerSymbolTable(TickerSymbolTable tickerSymbols) throws IllegalArgumentException {
+    if (tickerSymbols == this.tickerSymbols) {
+      return;
+    }
+    TickerPositions[] newPositions = new TickerPositions[tickerSymbols.size()];
+    int[] newHeldTickerIds = new int[heldTickerIds.length];
+    for (int k = 0; k < heldTickerCount; k++) {
+      int tickerId = toTableId(tickerSymbols, heldTickerIds[k]);
+      newPositions[tickerId] = positions[heldTickerIds[k]];
+      newHeldTickerIds[k] = tickerId;
+    }
+    this.tickerSymbols = tickerSymbols;
+    this.positions = newPositions;
+    this.heldTickerIds = newHeldTickerIds;
+  }
+
+  /**
+   * Record a lot of the given ticker, bought (or sold, for a negative quantity) on the given date.
+   *
+   * @param stockName     the ticker symbol of the lot
+   * @param epochDay      the purchase date of the lot, as an epoch day
+   * @param quantityUnits the quantity of the lot, in quantity units
+   * @throws IllegalArgumentException if the ticker is not in the ledger's ticker symbol table
+   */
+  void addLot(String stockName, int epochDay, long quantityUnits)
+          throws IllegalArgumentException {
+    int tickerId = tickerSymbols.getId(stockName);
+    if (tickerId == TickerSymbolTable.NO_ID) {
+      throw new IllegalArgumentException("The program does not support the provided stock name '"
+              + stockName + "'");
+    }
+    if (positions[tickerId] == null) {
+      if (heldTickerCount == heldTickerIds.length) {
+        heldTickerIds = Arrays.copyOf(heldTickerIds, heldTickerCount * 2);
+      }
+      heldTickerIds[heldTickerCount++] = tickerId;
+      positions[tickerId] = new TickerPositions();
+    }
+    positions[tickerId].add(epochDay, quantityUnits);
+  }
+
+  /**
+   * Remove every lot from this ledger. The ledger keeps its ticker symbol table.
+   */
+  void clear() {
+    for (int k = 0; k < heldTickerCount; k++) {
+      positions[heldTickerIds[k]] = null;
+    }
+    heldTickerCount = 0;
+  }
+
+  /**
+   * Get the ids of the tickers that have at least one lot bought on or before the given date,
+   * in the order in which they were first added to the ledger.
+   *
+   * @param tickerSymbols the ticker symbol table whose ids are returned
+   * @param epochDay      the date, as an epoch day
+   * @return the ids of the tickers held on the given date
+   * @throws IllegalArgumentException if a held ticker is not in the given table
+   */
+  int[] getTickerIds(TickerSymbolTable tickerSymbols, int epochDay)
+          throws IllegalArgumentException {
+    int[] heldTickers = new int[heldTickerCount];
+    int heldCount = 0;
+    for (int k = 0; k < heldTickerCount; k++) {
+      int tickerId = heldTickerIds[k];
+      if (positions[tickerId].getFirstDay() <= epochDay) {
+        heldTickers[heldCount++] = toTableId(tickerSymbols, tickerId);
+      }
+    }
+    return Arrays.copyOf(heldTickers, heldCount);
+  }
+
+  /**
+   * Get the quantities of the given tickers held on the given date, that is, the sums of the
+   * quantities of their lots bought on or before the date.
+   *
+   * @param tickerSymbols the ticker symbol table that numbers the given tickers
+   * @param tickerIds     the ids of the tickers whose quantities are required
+   * @param epochDay      the date, as an epoch day
+   * @return the quantity (in shares) held of each ticker, in the order of the given tickers
+   */
+  double[] getQuantities(TickerSymbolTable tickerSymbols, int[] tickerIds, int epochDay) {
+    double[] quantities = new double[tickerIds.length];
+    for (int i = 0; i < tickerIds.length; i++) {
+      int tickerId = tickerSymbols == this.tickerSymbols
+              ? tickerIds[i]
+              : this.tickerSymbols.getId(tickerSymbols.getSymbol(tickerIds[i]));
+      TickerPositions tickerPositions = tickerId == TickerSymbolTable.NO_ID
+              ? null
+              : positions[tickerId];
+      long quantityUnits = tickerPositions == null ? 0 : tickerPositions.getQuantity(epochDay);
+      quantities[i] = (double) quantityUnits / Stock.QUANTITY_SCALE;
+    }
+    return quantities;
+  }
+
+  /**
+   * Get the market value of the positions held on each of the given dates. A ticker's value on
+   * a date is the quantity held on that date times the ticker's latest price on or before the
+   * date, so dates on which the market is closed are valued at the previous close.
+   * The dates are swept once in ascending order, with a cursor into each ticker's lots and one
+   * into its price history, so the cost is linear in the number of dates, lots and market dates
+   * of the range instead of the product of dates and lots.
+   *
+   * @param dataStore the data store from which the price histories are taken
+   * @param epochDays the dates to be valued, as epoch days, in any order
+   * @return the market value of the positions on each date, in the order of the given dates
+   * @throws IllegalArgumentException if a held ticker is not supported by the data store
+   */
+  double[] getMarketValues(IStockDataStore dataStore, int[] epochDays) {
+    long[] packedDays = new long[epochDays.length];
+    for (int j = 0; j < epochDays.length; j++) {
+      packedDays[j] = ((long) epochDays[j] << 32) | j;
+    }
+    Arrays.sort(packedDays);
+
+    double[] marketValues = new double[epochDays.length];
+    if (epochDays.length == 0) {
+      return marketValues;
+    }
+    int firstDay = (int) (packedDays[0] >> 32);
+    TickerSymbolTable storeTickerSymbols = dataStore.getTickerSymbolTable();
+    for (int k = 0; k < heldTickerCount; k++) {
+      TickerPositions tickerPositions = positions[heldTickerIds[k]];
+      IStockPriceSeries series = dataStore.getStockPriceSeries(
+              toTableId(storeTickerSymbols, heldTickerIds[k]));
+      int lotCursor = tickerPositions.floorIndex(firstDay);
+      int priceCursor = series.indexOf(firstDay);
+      priceCursor = priceCursor < 0 ? -priceCursor - 2 : priceCursor;
+
+      for (long packedDay : packedDays) {
+        int day = (int) (packedDay >> 32);
+        while (lotCursor + 1 < tickerPositions.size
+                && tickerPositions.days[lotCursor + 1] <= day) {
+          lotCursor++;
+        }
+        while (priceCursor + 1 < series.size() && series.getMarketDay(priceCursor + 1) <= day) {
+          priceCursor++;
+        }
+        if (lotCursor >= 0 && priceCursor >= 0) {
+          double quantity = (double) tickerPositions.cumulativeQuantities[lotCursor]
+                  / Stock.QUANTITY_SCALE;
+          marketValues[(int) packedDay] += series.getMarketPrice(priceCursor) * quantity;
+        }
+      }
+    }
+    return marketValues;
+  }
+
+  private int toTableId(TickerSymbolTable tickerSymbols, int tickerId)
+          throws IllegalArgumentException {
+    if (tickerSymbols == this.tickerSymbols) {
+      return tickerId;
+    }
+    String stockName = this.tickerSymbols.getSymbol(tickerId);
+    int tableId = tickerSymbols.getId(stockName);
+    if (tableId == TickerSymbolTable.NO_ID) {
+      throw new IllegalArgumentException("The program does not support the provided stock name '"
+              + stockName + "'");
+    }
+    return tableId;
+  }
+
+  private static final class TickerPositions {
+    private int[] days = new int[4];
+    private long[] cumulativeQuantities = new long[4];
+    private int size;
+
+    private void add(int epochDay, long quantityUnits) {
+      int index = Arrays.binarySearch(days, 0, size, epochDay);
+      if (index < 0) {
+        // lots usually arrive in date order, so this is an append in the common case
+        index = -index - 1;
+        if (size == days.length) {
+          days = Arrays.copyOf(days, size * 2);
+          cumulativeQuantities = Arrays.copyOf(cumulativeQuantities, size * 2);
+        }
+        System.arraycopy(days, index, days, index + 1, size - index);
+        System.arraycopy(cumulativeQuantities, index, cumulativeQuantities, index + 1,
+                size - index);
+        days[index] = epochDay;
+        cumulativeQuantities[index] = index > 0 ? cumulativeQuantities[index - 1] : 0;
+        size++;
+      }
+      for (int i = index; i < size; i++) {
+        cumulativeQuantities[i] += quantityUnits;
+      }
+    }
+
+    private int getFirstDay() {
+      return days[0];
+    }
+
+    private long getQuantity(int epochDay) {
+      int index = floorIndex(epochDay);
+      return index < 0 ? 0 : cumulativeQuantities[index];
+    }
+
+    private int floorIndex(int epochDay) {
+      // the position of the last purchase date on or before the given date, or -1
+      int index = Arrays.binarySearch(days, 0, size, epochDay);
+      return index < 0 ? -index - 2 : index;
+    }
+  }
+}
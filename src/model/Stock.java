@@ -15,8 +15,17 @@ public class Stock implements IStock {
    * The date format accepted as the purchase date of the Stock.
    */
   public static final String STOCK_PURCHASE_DATE_FORMAT = "yyyy-MM-dd";
+
+  /**
+   * The number of quantity units in one share. Stock quantities are kept as whole numbers of
+   * quantity units, which allows quantities with up to four decimal places.
+   */
+  public static final long QUANTITY_SCALE = 10_000;
+
+  private static final DateTimeFormatter purchaseDateFormatter = DateTimeFormatter
+          .ofPattern(STOCK_PURCHASE_DATE_FORMAT);
   private final String stockName;
-  private final float stockQuantity;
+  private final long quantityUnits;
   private final LocalDate purchaseDate;
 
   /**
@@ -32,26 +41,56 @@ public class Stock implements IStock {
           throws DateTimeParseException, IllegalArgumentException {
     LocalDate parsedPurchaseDate;
     try {
-      parsedPurchaseDate = LocalDate.parse(purchaseDate,
-              DateTimeFormatter.ofPattern(STOCK_PURCHASE_DATE_FORMAT));
+      parsedPurchaseDate = LocalDate.parse(purchaseDate, purchaseDateFormatter);
     } catch (DateTimeParseException e) {
       throw new IllegalArgumentException("The purchase date for stock "
               + stockName
               + " is not in the correct format(" + STOCK_PURCHASE_DATE_FORMAT + ")");
     }
 
-    //Check if the purchase date is a future date
-    if (!verifyFuturePurchaseDate(parsedPurchaseDate)) {
-      throw new IllegalArgumentException("Invalid purchase date for stock "
-              + stockName + ". "
-              + "A stock's purchase date cannot be a future date.");
-    }
-
+    validatePurchaseDate(stockName, parsedPurchaseDate);
     this.stockName = stockName;
-    this.stockQuantity = stockQuantity;
+    this.quantityUnits = toQuantityUnits(stockQuantity);
     this.purchaseDate = parsedPurchaseDate;
   }
 
+  /**
+   * Create a new Stock initialized with a stock ticker symbol, stock quantity, and the stock's
+   * purchase date.
+   *
+   * @param stockName     the stock's ticket symbol
+   * @param stockQuantity the stock's quantity
+   * @param purchaseDate  the stock's purchase date
+   * @throws IllegalArgumentException if the given stock purchase date is a future date
+   */
+  public Stock(String stockName, float stockQuantity, LocalDate purchaseDate)
+          throws IllegalArgumentException {
+    this(stockName, purchaseDate, toQuantityUnits(stockQuantity));
+  }
+
+  private Stock(String stockName, LocalDate purchaseDate, long quantityUnits)
+          throws IllegalArgumentException {
+    validatePurchaseDate(stockName, purchaseDate);
+    this.stockName = stockName;
+    this.quantityUnits = quantityUnits;
+    this.purchaseDate = purchaseDate;
+  }
+
+  /**
+   * Create a new Stock initialized with a stock ticker symbol, an exact stock quantity in
+   * quantity units, and the stock's purchase date.
+   *
+   * @param stockName     the stock's ticket symbol
+   * @param quantityUnits the stock's quantity, in units of 1 / QUANTITY_SCALE of a share
+   * @param purchaseDate  the stock's purchase date
+   * @return the new stock
+   * @throws IllegalArgumentException if the given stock purchase date is a future date
+   */
+  public static Stock ofQuantityUnits(String stockName, long quantityUnits,
+                                      LocalDate purchaseDate) throws IllegalArgumentException {
+    return new Stock(stockName, purchaseDate, quantityUnits);
+  }
+
   @Override
   public String getStockName() {
     return this.stockName;
@@ -59,12 +98,17 @@ public class Stock implements IStock {
 
   @Override
   public float getStockQuantity() {
-    return this.stockQuantity;
+    return (float) ((double) this.quantityUnits / QUANTITY_SCALE);
+  }
+
+  @Override
+  public long getQuantityUnits() {
+    return this.quantityUnits;
   }
 
   @Override
-  public String getPurchaseDate() {
-    return String.valueOf(this.purchaseDate);
+  public LocalDate getPurchaseDate() {
+    return this.purchaseDate;
   }
 
   @Override
@@ -72,25 +116,41 @@ public class Stock implements IStock {
     String result = "";
     result += this.stockName;
     result += ",";
-    result += this.stockQuantity;
+    result += getStockQuantity();
     result += ",";
-    result += DateTimeFormatter.ofPattern(STOCK_PURCHASE_DATE_FORMAT).format(this.purchaseDate);
+    result += purchaseDateFormatter.format(this.purchaseDate);
 
     return result;
   }
 
   @Override
   public IStock addStockQuantity(float quantityToBeAdded) {
-    float newStockQuantity = this.stockQuantity + quantityToBeAdded;
-    return new Stock(this.stockName, newStockQuantity, this.purchaseDate.toString());
+    long newQuantityUnits = this.quantityUnits + toQuantityUnits(quantityToBeAdded);
+    return new Stock(this.stockName, this.purchaseDate, newQuantityUnits);
   }
 
-  private boolean verifyFuturePurchaseDate(LocalDate purchaseDate) {
-    return !purchaseDate.isAfter(LocalDate.now());
+  /**
+   * Convert the given stock quantity to a whole number of quantity units, rounding it to the
+   * nearest unit.
+   *
+   * @param stockQuantity the stock quantity, in shares
+   * @return the stock quantity in quantity units
+   */
+  public static long toQuantityUnits(double stockQuantity) {
+    return Math.round(stockQuantity * QUANTITY_SCALE);
+  }
+
+  private static void validatePurchaseDate(String stockName, LocalDate purchaseDate) {
+    //Check if the purchase date is a future date
+    if (purchaseDate.isAfter(LocalDate.now())) {
+      throw new IllegalArgumentException("Invalid purchase date for stock "
+              + stockName + ". "
+              + "A stock's purchase date cannot be a future date.");
+    }
   }
 
   @Override
   public String toString() {
-    return (this.stockName + ":" + this.stockQuantity + ":" + this.purchaseDate);
+    return (this.stockName + ":" + getStockQuantity() + ":" + this.purchaseDate);
   }
 }
@@ -0,0 +1,103 @@
+package model;
+
+import java.io.File;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The TransactionLogSyncer class batches the syncing of portfolio transaction logs to the storage
+ * device (group commit). Instead of syncing a log after every trade, the portfolios with appended
+ * trades are remembered, and all of their logs are synced together once a given number of trades
+ * is pending, or once the oldest pending trade has waited for a given time. The time is a bound:
+ * a sync is scheduled on a background (daemon) thread when the first trade of a batch is added,
+ * so the pending trades are synced even if no other trade follows.
+ * Trades that are appended but not yet synced are already in the log files, so they only risk
+ * being lost if the whole system crashes, not if the application exits.
+ */
+class TransactionLogSyncer {
+  private final String portfolioFilesDirectory;
+  private final int maxPendingTrades;
+  private final long maxDelayMillis;
+  private final Set<String> unsyncedPortfolios;
+  private final ScheduledThreadPoolExecutor syncScheduler;
+  private ScheduledFuture<?> scheduledSync;
+  private int pendingTrades;
+  private long firstPendingTradeMillis;
+
+  /**
+   * Create a new TransactionLogSyncer for the portfolios stored in the given directory.
+   *
+   * @param portfolioFilesDirectory the directory where the portfolios' files are stored
+   * @param maxPendingTrades        the number of trades after which the logs are synced
+   * @param maxDelayMillis          the time (in milliseconds) after which a pending trade is
+   *                                synced
+   * @throws IllegalArgumentException if the number of trades is not positive, or if the time is
+   *                                  negative
+   */
+  TransactionLogSyncer(String portfolioFilesDirectory, int maxPendingTrades, long maxDelayMillis)
+          throws IllegalArgumentException {
+    if (maxPendingTrades <= 0) {
+      throw new IllegalArgumentException("The number of trades per sync must be positive.");
+    }
+    if (maxDelayMillis < 0) {
+      throw new IllegalArgumentException("The delay before a sync cannot be negative.");
+    }
+    this.portfolioFilesDirectory = portfolioFilesDirectory;
+    this.maxPendingTrades = maxPendingTrades;
+    this.maxDelayMillis = maxDelayMillis;
+    this.unsyncedPortfolios = new LinkedHashSet<>();
+    this.syncScheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+      Thread thread = new Thread(runnable, "transaction-log-syncer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    // the scheduler's thread only lives while a sync is scheduled
+    this.syncScheduler.setKeepAliveTime(maxDelayMillis + 1000, TimeUnit.MILLISECONDS);
+    this.syncScheduler.allowCoreThreadTimeOut(true);
+    this.syncScheduler.setRemoveOnCancelPolicy(true);
+  }
+
+  /**
+   * Record that a trade was appended to the transaction log of the given portfolio, and sync the
+   * pending logs if the batch is complete.
+   *
+   * @param portfolioName the name of the portfolio
+   */
+  synchronized void addPendingTrade(String portfolioName) {
+    long now = System.currentTimeMillis();
+    if (pendingTrades == 0) {
+      firstPendingTradeMillis = now;
+    }
+    unsyncedPortfolios.add(portfolioName);
+    pendingTrades++;
+
+    if (pendingTrades >= maxPendingTrades || now - firstPendingTradeMillis >= maxDelayMillis) {
+      sync();
+    } else if (scheduledSync == null) {
+      scheduledSync = syncScheduler.schedule(this::sync, maxDelayMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Sync the transaction logs of every portfolio with pending trades.
+   */
+  synchronized void sync() {
+    if (scheduledSync != null) {
+      scheduledSync.cancel(false);
+      scheduledSync = null;
+    }
+    if (pendingTrades == 0) {
+      return;
+    }
+    for (String portfolioName : unsyncedPortfolios) {
+      PortfolioModelFileUtility.syncTransactionLog(portfolioName, portfolioFilesDirectory);
+    }
+    // a log created by the batch must also be found in its directory after a crash
+    PortfolioModelFileUtility.syncDirectory(new File(portfolioFilesDirectory));
+    unsyncedPortfolios.clear();
+    pendingTrades = 0;
+  }
+}
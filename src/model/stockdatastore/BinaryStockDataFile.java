@@ -0,0 +1,146 @@
+package model.stockdatastore;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import model.CsvRecordReader;
+
+/**
+ * The BinaryStockDataFile final class provides static helper methods for the binary stock data
+ * file format, which is a compact columnar alternative to the Alpha Vantage CSV files kept in the
+ * stock data files directory.
+ * A binary stock data file starts with a fixed size header (magic number, format version, record
+ * count), followed by one fixed width record per market date in ascending order of date. Each
+ * record holds the market date as an epoch day, the open, high, low and close prices, and the
+ * traded volume. Since every record has the same width, the file can be memory mapped and read in
+ * place without creating any objects.
+ */
+public final class BinaryStockDataFile {
+  /**
+   * The file extension of binary stock data files.
+   */
+  public static final String FILE_EXTENSION = ".bin";
+
+  static final int MAGIC = 0x53544B31; // "STK1"
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 16;
+  static final int RECORD_SIZE = 44;
+  static final int DAY_OFFSET = 0;
+  static final int OPEN_OFFSET = 4;
+  static final int HIGH_OFFSET = 12;
+  static final int LOW_OFFSET = 20;
+  static final int CLOSE_OFFSET = 28;
+  static final int VOLUME_OFFSET = 36;
+  static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+  private BinaryStockDataFile() {
+  }
+
+  /**
+   * Convert the given Alpha Vantage daily time series CSV file
+   * (timestamp,open,high,low,close,volume) to a binary stock data file. The binary file is
+   * written to a temporary file first, and then moved in place of the given binary file.
+   *
+   * @param csvDataFile    the CSV file to be converted
+   * @param binaryDataFile the binary file to be created
+   * @throws IOException if the CSV file could not be read or the binary file could not be written
+   */
+  public static void convertCsvToBinary(File csvDataFile, File binaryDataFile)
+          throws IOException {
+    int[] marketDays = new int[1024];
+    double[][] columns = new double[5][1024];
+    int size = 0;
+    try (CsvRecordReader reader = new CsvRecordReader(new FileReader(csvDataFile))) {
+      reader.nextRecord(); // read first line but don't do anything with it
+      while (reader.nextRecord()) {
+        if (reader.isEmptyRecord()) {
+          continue;
+        }
+        if (size == marketDays.length) {
+          marketDays = Arrays.copyOf(marketDays, size * 2);
+          for (int c = 0; c < columns.length; c++) {
+            columns[c] = Arrays.copyOf(columns[c], size * 2);
+          }
+        }
+        marketDays[size] = reader.getEpochDay(0);
+        for (int c = 0; c < columns.length; c++) {
+          columns[c][size] = reader.getDouble(c + 1);
+        }
+        size++;
+      }
+    }
+
+    // the CSV files are in descending order of date, the binary format is ascending
+    long[] packedRecords = new long[size];
+    for (int i = 0; i < size; i++) {
+      packedRecords[i] = ((long) marketDays[i] << 32) | i;
+    }
+    Arrays.sort(packedRecords);
+
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + size * RECORD_SIZE)
+            .order(BYTE_ORDER);
+    buffer.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(0);
+    for (long packedRecord : packedRecords) {
+      int i = (int) packedRecord;
+      buffer.putInt(marketDays[i])
+              .putDouble(columns[0][i])
+              .putDouble(columns[1][i])
+              .putDouble(columns[2][i])
+              .putDouble(columns[3][i])
+              .putLong((long) columns[4][i]);
+    }
+    buffer.flip();
+
+    File tempFile = new File(binaryDataFile.getPath() + ".tmp");
+    try (FileChannel channel = FileChannel.open(tempFile.toPath(),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+    Files.move(tempFile.toPath(), binaryDataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Memory map the given binary stock data file as a price series of the given stock.
+   *
+   * @param stockName      the ticker symbol of the stock
+   * @param binaryDataFile the binary stock data file of the stock
+   * @return the price series backed by the mapped file
+   * @throws IOException if the file could not be mapped, or if it is not a valid binary stock
+   *                     data file
+   */
+  public static IStockPriceSeries map(String stockName, File binaryDataFile) throws IOException {
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(binaryDataFile.toPath(),
+            StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    buffer.order(BYTE_ORDER);
+
+    if (buffer.limit() < HEADER_SIZE
+            || buffer.getInt(0) != MAGIC
+            || buffer.getInt(4) != VERSION) {
+      throw new InvalidObjectException("The file " + binaryDataFile.getPath()
+              + " is not a valid binary stock data file.");
+    }
+    int recordCount = buffer.getInt(8);
+    if (buffer.limit() != HEADER_SIZE + (long) recordCount * RECORD_SIZE) {
+      throw new InvalidObjectException("The binary stock data file "
+              + binaryDataFile.getPath() + " is truncated.");
+    }
+    return new MappedStockPriceSeries(stockName, buffer, recordCount);
+  }
+}
@@ -0,0 +1,101 @@
+package model.stockdatastore;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalDate;
+import java.util.NoSuchElementException;
+
+/**
+ * The DirectStockPriceSeries class implements the IStockPriceSeries interface over a direct
+ * (off-heap) byte buffer. The buffer holds the market dates of the series as a column of ints,
+ * followed by the market prices as a column of doubles, so a series costs
+ * BYTES_PER_MARKET_DAY bytes per market date outside of the Java heap, and only a few objects on
+ * the heap.
+ * Only absolute reads are performed on the buffer, hence a series can be shared between threads.
+ */
+class DirectStockPriceSeries implements IStockPriceSeries {
+  /**
+   * The number of bytes used by a direct series for each market date: an int for the date and a
+   * double for the price.
+   */
+  static final int BYTES_PER_MARKET_DAY = Integer.BYTES + Double.BYTES;
+
+  private final String stockName;
+  private final ByteBuffer buffer;
+  private final int size;
+  private final int pricesOffset;
+
+  /**
+   * Create a new DirectStockPriceSeries containing a copy of the given price series.
+   *
+   * @param stockPriceSeries the price series to be copied off the heap
+   */
+  DirectStockPriceSeries(IStockPriceSeries stockPriceSeries) {
+    this.stockName = stockPriceSeries.getStockName();
+    this.size = stockPriceSeries.size();
+    this.pricesOffset = size * Integer.BYTES;
+    this.buffer = ByteBuffer.allocateDirect(size * BYTES_PER_MARKET_DAY)
+            .order(ByteOrder.nativeOrder());
+    for (int i = 0; i < size; i++) {
+      buffer.putInt(i * Integer.BYTES, stockPriceSeries.getMarketDay(i));
+      buffer.putDouble(pricesOffset + i * Double.BYTES, stockPriceSeries.getMarketPrice(i));
+    }
+  }
+
+  @Override
+  public String getStockName() {
+    return stockName;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public int getMarketDay(int index) {
+    checkIndex(index);
+    return buffer.getInt(index * Integer.BYTES);
+  }
+
+  @Override
+  public double getMarketPrice(int index) {
+    checkIndex(index);
+    return buffer.getDouble(pricesOffset + index * Double.BYTES);
+  }
+
+  @Override
+  public int indexOf(int epochDay) {
+    int low = 0;
+    int high = size - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int midDay = buffer.getInt(mid * Integer.BYTES);
+      if (midDay < epochDay) {
+        low = mid + 1;
+      } else if (midDay > epochDay) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  @Override
+  public double getMarketPrice(LocalDate date) throws NoSuchElementException {
+    int index = indexOf((int) date.toEpochDay());
+    if (index < 0) {
+      throw new NoSuchElementException("Stock price for stock " + stockName
+              + " is not present for " + date + ". Please enter a valid date.");
+    }
+    return getMarketPrice(index);
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for the "
+              + "price series of " + stockName + " of size " + size);
+    }
+  }
+}
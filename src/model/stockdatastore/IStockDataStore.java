@@ -29,6 +29,14 @@ public interface IStockDataStore {
    */
   boolean isAcceptableStock(String stockName);
 
+  /**
+   * Get the table that numbers the stocks supported by the stock data store, so that callers
+   * can keep per stock data in arrays indexed by ticker id.
+   *
+   * @return the ticker symbol table of the supported stocks
+   */
+  TickerSymbolTable getTickerSymbolTable();
+
   /**
    * Get the stock value of the given stock ticker symbol, on a given date.
    *
@@ -38,6 +46,52 @@ public interface IStockDataStore {
    */
   double getStockValue(String stockName, LocalDate date) throws NoSuchElementException;
 
+  /**
+   * Get the stock values of the given stock ticker symbols, on each of the given dates.
+   * The result is a matrix with one row per stock and one column per date, in the order in which
+   * they are given. If the store does not have a stock's price for a date, the corresponding
+   * value is Double.NaN.
+   * The dates need not be sorted, and a stock's prices are looked up in a single pass over its
+   * price history.
+   *
+   * @param stockNames the ticker symbols of the stocks whose price values are required
+   * @param dates      the dates for which the stock prices are required
+   * @return the stock prices, where the value at [i][j] is the price of stock i on date j
+   */
+  double[][] getStockValues(String[] stockNames, LocalDate[] dates);
+
+  /**
+   * Get the stock values of the stocks with the given ticker ids, on each of the given dates,
+   * in the same form as getStockValues for ticker symbols. The ids are those of the store's
+   * ticker symbol table, and the stocks' price series are looked up without hashing their
+   * ticker symbols.
+   *
+   * @param tickerIds the ticker ids of the stocks whose price values are required
+   * @param dates     the dates for which the stock prices are required
+   * @return the stock prices, where the value at [i][j] is the price of stock i on date j
+   * @throws IndexOutOfBoundsException if an id is not in the store's ticker symbol table
+   */
+  double[][] getStockValues(int[] tickerIds, LocalDate[] dates) throws IndexOutOfBoundsException;
+
+  /**
+   * Get the complete price history of the given stock ticker symbol, for callers that walk a
+   * stock's prices in date order instead of looking them up one date at a time.
+   *
+   * @param stockName the ticker symbol for the stock whose price history is required
+   * @return the price series of the given stock
+   */
+  IStockPriceSeries getStockPriceSeries(String stockName);
+
+  /**
+   * Get the complete price history of the stock with the given ticker id, which is the id of the
+   * stock in the store's ticker symbol table.
+   *
+   * @param tickerId the ticker id of the stock whose price history is required
+   * @return the price series of the given stock
+   * @throws IndexOutOfBoundsException if the id is not in the store's ticker symbol table
+   */
+  IStockPriceSeries getStockPriceSeries(int tickerId) throws IndexOutOfBoundsException;
+
   /**
    * Check if the given date is a valid date with stock price data present in the data store.
    *
@@ -54,4 +108,14 @@ public interface IStockDataStore {
    * @return the closest valid stock market date
    */
   LocalDate getNextValidMarketDate(LocalDate date);
+
+  /**
+   * Get the closest valid market date on or before the given date. If the given date is a valid
+   * market date, return the same date.
+   *
+   * @param date the date from which the closest previous market date is to be found
+   * @return the closest valid stock market date on or before the given date
+   * @throws NoSuchElementException if there is no valid market date on or before the given date
+   */
+  LocalDate getPreviousValidMarketDate(LocalDate date) throws NoSuchElementException;
 }
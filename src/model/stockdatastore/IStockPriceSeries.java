@@ -0,0 +1,63 @@
+package model.stockdatastore;
+
+import java.time.LocalDate;
+import java.util.NoSuchElementException;
+
+/**
+ * This interface represents the complete price history of a single stock, indexed by market
+ * date. The market dates of a series are held in ascending order, so each market date has a
+ * position (index) in the series, and a price can be looked up by its position or by its
+ * market date.
+ * Market dates are exposed as epoch days (the number of days since 1970-01-01), which is the
+ * same representation as LocalDate.toEpochDay().
+ */
+public interface IStockPriceSeries {
+  /**
+   * Get the ticker symbol of the stock whose prices are contained in this series.
+   *
+   * @return the stock's ticker symbol
+   */
+  String getStockName();
+
+  /**
+   * Get the number of market dates present in this series.
+   *
+   * @return the number of market dates in this series
+   */
+  int size();
+
+  /**
+   * Get the market date at the given position in this series as an epoch day.
+   *
+   * @param index the position of the market date, between 0 and size() - 1
+   * @return the market date at the given position as an epoch day
+   */
+  int getMarketDay(int index);
+
+  /**
+   * Get the stock's market price at the given position in this series.
+   *
+   * @param index the position of the market date, between 0 and size() - 1
+   * @return the stock's market price for the market date at the given position
+   */
+  double getMarketPrice(int index);
+
+  /**
+   * Get the position of the given market date in this series. If the given date is not present
+   * in this series, a negative value (-(insertion point) - 1) is returned, following the contract
+   * of java.util.Arrays.binarySearch.
+   *
+   * @param epochDay the market date to be searched, as an epoch day
+   * @return the position of the market date if present, a negative value otherwise
+   */
+  int indexOf(int epochDay);
+
+  /**
+   * Get the stock's market price on a given date.
+   *
+   * @param date the market date for which the stock price is required
+   * @return the stock's market price on the given date
+   * @throws NoSuchElementException if the series does not contain a price for the given date
+   */
+  double getMarketPrice(LocalDate date) throws NoSuchElementException;
+}
@@ -0,0 +1,86 @@
+package model.stockdatastore;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.NoSuchElementException;
+
+/**
+ * The MappedStockPriceSeries class implements the IStockPriceSeries interface over a memory
+ * mapped binary stock data file (see BinaryStockDataFile). The market dates and prices are read
+ * in place from the mapped buffer, so the series does not hold one object per market date.
+ * Only absolute reads are performed on the buffer, hence a series can be shared between threads.
+ */
+class MappedStockPriceSeries implements IStockPriceSeries {
+  private final String stockName;
+  private final ByteBuffer buffer;
+  private final int size;
+
+  /**
+   * Create a new MappedStockPriceSeries over the given buffer.
+   *
+   * @param stockName the ticker symbol of the stock
+   * @param buffer    the buffer containing the binary stock data file
+   * @param size      the number of records in the buffer
+   */
+  MappedStockPriceSeries(String stockName, ByteBuffer buffer, int size) {
+    this.stockName = stockName;
+    this.buffer = buffer;
+    this.size = size;
+  }
+
+  @Override
+  public String getStockName() {
+    return stockName;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public int getMarketDay(int index) {
+    return buffer.getInt(recordOffset(index) + BinaryStockDataFile.DAY_OFFSET);
+  }
+
+  @Override
+  public double getMarketPrice(int index) {
+    return buffer.getDouble(recordOffset(index) + BinaryStockDataFile.CLOSE_OFFSET);
+  }
+
+  @Override
+  public int indexOf(int epochDay) {
+    int low = 0;
+    int high = size - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int midDay = getMarketDay(mid);
+      if (midDay < epochDay) {
+        low = mid + 1;
+      } else if (midDay > epochDay) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  @Override
+  public double getMarketPrice(LocalDate date) throws NoSuchElementException {
+    int index = indexOf((int) date.toEpochDay());
+    if (index < 0) {
+      throw new NoSuchElementException("Stock price for stock " + stockName
+              + " is not present for " + date + ". Please enter a valid date.");
+    }
+    return getMarketPrice(index);
+  }
+
+  private int recordOffset(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for the "
+              + "price series of " + stockName + " of size " + size);
+    }
+    return BinaryStockDataFile.HEADER_SIZE + index * BinaryStockDataFile.RECORD_SIZE;
+  }
+}
@@ -0,0 +1,103 @@
+package model.stockdatastore;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The MarketCalendar class represents the set of valid stock market dates (trading days) known to
+ * a stock data store. The calendar is derived from a stock's price series, since a date is a valid
+ * market date exactly when the stock has a price for it.
+ * Membership queries are answered from a bitset over the calendar's date range, and queries for
+ * the next or previous trading day are binary searches over the sorted trading days.
+ * All dates are represented as epoch days (the number of days since 1970-01-01).
+ */
+public class MarketCalendar {
+  /**
+   * The value returned when there is no trading day that satisfies a query.
+   */
+  public static final int NO_MARKET_DAY = Integer.MIN_VALUE;
+
+  private final int[] marketDays;
+  private final BitSet marketDaySet;
+  private final int firstMarketDay;
+
+  /**
+   * Create a new MarketCalendar containing every market date present in the given price series.
+   *
+   * @param stockPriceSeries the price series from which the market dates are taken
+   */
+  public MarketCalendar(IStockPriceSeries stockPriceSeries) {
+    int size = stockPriceSeries.size();
+    this.marketDays = new int[size];
+    for (int i = 0; i < size; i++) {
+      marketDays[i] = stockPriceSeries.getMarketDay(i);
+    }
+
+    this.firstMarketDay = size > 0 ? marketDays[0] : 0;
+    this.marketDaySet = new BitSet(size > 0 ? marketDays[size - 1] - firstMarketDay + 1 : 0);
+    for (int marketDay : marketDays) {
+      marketDaySet.set(marketDay - firstMarketDay);
+    }
+  }
+
+  /**
+   * Check if the given date is a trading day in this calendar.
+   *
+   * @param epochDay the date to be checked, as an epoch day
+   * @return true if the given date is a trading day, false otherwise
+   */
+  public boolean isMarketDay(int epochDay) {
+    int offset = epochDay - firstMarketDay;
+    return offset >= 0 && marketDaySet.get(offset);
+  }
+
+  /**
+   * Get the first trading day on or after the given date.
+   *
+   * @param epochDay the date from which the search starts, as an epoch day
+   * @return the first trading day on or after the given date, or NO_MARKET_DAY if the calendar
+   *         has no such day
+   */
+  public int getNextMarketDay(int epochDay) {
+    int index = Arrays.binarySearch(marketDays, epochDay);
+    if (index < 0) {
+      index = -index - 1;
+    }
+    return index < marketDays.length ? marketDays[index] : NO_MARKET_DAY;
+  }
+
+  /**
+   * Get the last trading day on or before the given date.
+   *
+   * @param epochDay the date from which the search starts, as an epoch day
+   * @return the last trading day on or before the given date, or NO_MARKET_DAY if the calendar
+   *         has no such day
+   */
+  public int getPreviousMarketDay(int epochDay) {
+    int index = Arrays.binarySearch(marketDays, epochDay);
+    if (index < 0) {
+      index = -index - 2;
+    }
+    return index >= 0 ? marketDays[index] : NO_MARKET_DAY;
+  }
+
+  /**
+   * Get the number of trading days in this calendar.
+   *
+   * @return the number of trading days in this calendar
+   */
+  public int size() {
+    return marketDays.length;
+  }
+
+  /**
+   * Get the trading day at the given position in this calendar. Trading days are held in
+   * ascending order.
+   *
+   * @param index the position of the trading day, between 0 and size() - 1
+   * @return the trading day at the given position, as an epoch day
+   */
+  public int getMarketDay(int index) {
+    return marketDays[index];
+  }
+}
@@ -0,0 +1,438 @@
+package model.stockdatastore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * The StockDataFetcher class downloads daily stock price data (in the Alpha Vantage CSV format)
+ * from a stock data endpoint.
+ * The endpoint is a URL template in which the placeholders {symbol}, {outputsize} and {apikey}
+ * are replaced for every request, so the fetcher can be pointed at the Alpha Vantage API or at
+ * any stand-in that serves the same format, including a file: URL over a local directory.
+ * Several stocks can be fetched in parallel, with a bounded number of concurrent requests and a
+ * limit on the number of requests started per minute. A request that cannot connect to the
+ * endpoint (when offline, for example) does not count towards that limit, so that it fails
+ * without waiting for the rate limit. Every full history that is fetched is
+ * written through to the stock data files directory, if the fetcher has one.
+ * A stock whose history is already in the stock data files directory can be refreshed
+ * incrementally: only the most recent prices are requested, and the ones that are newer than the
+ * cached history are merged into the stock's data file. A refresh that finds no newer prices (after
+ * a market holiday, for example) leaves a marker file next to the data file, so that the stock is
+ * not requested again until another day has closed. A refresh never waits for the rate limit:
+ * when no request can be started, the cached history is returned as it is.
+ */
+public class StockDataFetcher {
+  /**
+   * The URL template of the Alpha Vantage daily time series API.
+   */
+  public static final String ALPHA_VANTAGE_ENDPOINT = "https://www.alphavantage"
+          + ".co/query?function=TIME_SERIES_DAILY"
+          + "&outputsize={outputsize}"
+          + "&symbol={symbol}"
+          + "&apikey={apikey}"
+          + "&datatype=csv";
+
+  private static final String alphaVantageApiKey = "2ZZHRYGHDR5SZH9R";
+  private static final String stockDataHeader = "timestamp";
+  private static final String stockDataFileFormat = ".csv";
+  private static final String checkedMarkerFileFormat = ".checked";
+  private static final long rateLimitWindowMillis = TimeUnit.MINUTES.toMillis(1);
+
+  private final String endpoint;
+  private final String apiKey;
+  private final int maxConcurrentRequests;
+  private final int requestsPerMinute;
+  private final File stockDataFilesDirectory;
+  private final Deque<Long> recentRequestTimes;
+
+  /**
+   * Create a new StockDataFetcher for the Alpha Vantage API, which writes the fetched data
+   * through to the given stock data files directory. The fetcher runs up to 4 requests at a time,
+   * and starts at most 5 requests per minute, which is the limit of the API's free tier.
+   *
+   * @param stockDataFilesDirectory the directory where the fetched stock data files are written
+   */
+  public StockDataFetcher(File stockDataFilesDirectory) {
+    this(ALPHA_VANTAGE_ENDPOINT, alphaVantageApiKey, 4, 5, stockDataFilesDirectory);
+  }
+
+  /**
+   * Create a new StockDataFetcher for the given endpoint.
+   *
+   * @param endpoint                the URL template of the endpoint, containing the placeholders
+   *                                {symbol}, and optionally {outputsize} and {apikey}
+   * @param apiKey                  the API key to be sent to the endpoint
+   * @param maxConcurrentRequests   the maximum number of requests that run at the same time
+   * @param requestsPerMinute       the maximum number of requests started in any minute
+   * @param stockDataFilesDirectory the directory where the fetched stock data files are written,
+   *                                or null if the fetched data must not be written to files
+   * @throws IllegalArgumentException if the number of concurrent requests or the number of
+   *                                  requests per minute is not positive
+   */
+  public StockDataFetcher(String endpoint,
+                          String apiKey,
+                          int maxConcurrentRequests,
+                          int requestsPerMinute,
+                          File stockDataFilesDirectory) throws IllegalArgumentException {
+    if (maxConcurrentRequests <= 0 || requestsPerMinute <= 0) {
+      throw new IllegalArgumentException("The number of concurrent requests and the number of "
+              + "requests per minute must be positive.");
+    }
+    this.endpoint = endpoint;
+    this.apiKey = apiKey;
+    this.maxConcurrentRequests = maxConcurrentRequests;
+    this.requestsPerMinute = requestsPerMinute;
+    this.stockDataFilesDirectory = stockDataFilesDirectory;
+    this.recentRequestTimes = new ArrayDeque<>();
+  }
+
+  /**
+   * Fetch the full price history of the given stock, and write it through to the stock data
+   * files directory. The prices of a day that is not over yet are left out, since they are not
+   * final.
+   *
+   * @param stockSymbol the ticker symbol of the stock
+   * @return the stock's price history in CSV format
+   * @throws IllegalArgumentException if no price data could be fetched for the stock
+   */
+  public String fetch(String stockSymbol) throws IllegalArgumentException {
+    return fetchFull(stockSymbol, true);
+  }
+
+  /**
+   * Fetch the full price history of all the given stocks in parallel, and write each of them
+   * through to the stock data files directory.
+   *
+   * @param stockSymbols the ticker symbols of the stocks
+   * @return a map from each stock's ticker symbol to its price history in CSV format, in the
+   *         order of the given stocks
+   * @throws IllegalArgumentException if no price data could be fetched for one of the stocks
+   */
+  public Map<String, String> fetchAll(List<String> stockSymbols) throws IllegalArgumentException {
+    return runAll(stockSymbols, this::fetch);
+  }
+
+  /**
+   * Bring the cached price history of the given stock up to date, and return it.
+   * If the stock's data file is already up to date (it contains the prices of the last weekday
+   * before today), or if the stock was already found to have no newer prices after that weekday
+   * was over, no request is made. Otherwise only the most recent prices are requested and
+   * merged into the data file, unless the data file is older than the recent prices cover, in
+   * which case the full history is fetched. If the stock has no data file yet, the full history
+   * is fetched and written to a new data file.
+   * If the recent prices cannot be fetched, or if the rate limit does not allow another request
+   * right now, the cached price history is returned as it is, so that cached stocks remain
+   * available without waiting while the endpoint is unreachable or busy.
+   *
+   * @param stockSymbol the ticker symbol of the stock
+   * @return the stock's price history in CSV format
+   * @throws IllegalArgumentException if the stock has no data file and no price data could be
+   *                                  fetched for it
+   */
+  public String refresh(String stockSymbol) throws IllegalArgumentException {
+    Path stockDataFile = stockDataFilesDirectory == null
+            ? null
+            : Paths.get(stockDataFilesDirectory.getPath(), stockSymbol + stockDataFileFormat);
+    if (stockDataFile == null || !Files.isRegularFile(stockDataFile)) {
+      return fetch(stockSymbol);
+    }
+
+    try {
+      String cachedStockData = Files.readString(stockDataFile, StandardCharsets.US_ASCII);
+      int lastCachedDay = getLatestMarketDay(cachedStockData);
+      Path checkedMarkerFile = Paths.get(stockDataFilesDirectory.getPath(),
+              stockSymbol + checkedMarkerFileFormat);
+      if (lastCachedDay >= getLastClosedMarketDay() || isCheckedSinceLastClose(checkedMarkerFile)) {
+        return cachedStockData;
+      }
+
+      String recentStockData;
+      try {
+        recentStockData = fetch(stockSymbol, "compact", false);
+      } catch (IllegalArgumentException e) {
+        return cachedStockData;
+      }
+
+      // take the recent rows that are newer than the cached history; both are in descending
+      // order of date, so they are the leading rows of the recent data. The rows of a day that
+      // is not over yet are left out, since once cached they would never be refreshed again
+      String[] recentRows = recentStockData.split("\n");
+      StringBuilder newRows = new StringBuilder();
+      int lastClosedDay = getLastClosedMarketDay();
+      int oldestRecentDay = Integer.MAX_VALUE;
+      for (int i = 1; i < recentRows.length; i++) {
+        if (recentRows[i].isBlank()) {
+          continue;
+        }
+        oldestRecentDay = getMarketDay(recentRows[i]);
+        if (oldestRecentDay > lastCachedDay && oldestRecentDay <= lastClosedDay) {
+          newRows.append(recentRows[i].stripTrailing()).append("\n");
+        }
+      }
+      if (oldestRecentDay > lastCachedDay) {
+        // the recent prices do not reach back to the cached history, so there is a gap
+        try {
+          return fetchFull(stockSymbol, false);
+        } catch (IllegalArgumentException e) {
+          return cachedStockData;
+        }
+      }
+      if (newRows.length() == 0) {
+        // the last closed day had no prices (it was a market holiday, or the prices are late),
+        // so the stock is not requested again until another day has closed
+        Files.write(checkedMarkerFile, new byte[0]);
+        return cachedStockData;
+      }
+
+      int headerEnd = cachedStockData.indexOf('\n') + 1;
+      String mergedStockData = cachedStockData.substring(0, headerEnd)
+              + newRows
+              + cachedStockData.substring(headerEnd);
+      writeStockDataFile(stockSymbol, mergedStockData);
+      return mergedStockData;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Bring the cached price history of all the given stocks up to date in parallel.
+   *
+   * @param stockSymbols the ticker symbols of the stocks
+   * @return a map from each stock's ticker symbol to its price history in CSV format, in the
+   *         order of the given stocks
+   * @throws IllegalArgumentException if a stock has no data file and no price data could be
+   *                                  fetched for it
+   * @see #refresh(String)
+   */
+  public Map<String, String> refreshAll(List<String> stockSymbols)
+          throws IllegalArgumentException {
+    return runAll(stockSymbols, this::refresh);
+  }
+
+  private Map<String, String> runAll(List<String> stockSymbols, Function<String, String> task) {
+    ExecutorService executor = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(maxConcurrentRequests, stockSymbols.size())));
+    try {
+      List<Future<String>> futures = new ArrayList<>();
+      for (String stockSymbol : stockSymbols) {
+        futures.add(executor.submit(() -> task.apply(stockSymbol)));
+      }
+
+      Map<String, String> stockData = new LinkedHashMap<>();
+      for (int i = 0; i < stockSymbols.size(); i++) {
+        stockData.put(stockSymbols.get(i), getResult(futures.get(i)));
+      }
+      return stockData;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Fetch the price data of the given stock with the given output size, without writing it to
+   * the stock data files directory.
+   *
+   * @param stockSymbol   the ticker symbol of the stock
+   * @param outputSize    the output size of the request ("full" for the complete history,
+   *                      "compact" for the most recent prices)
+   * @param waitForPermit whether to wait until the rate limit allows the request, instead of
+   *                      failing when it does not allow it right now
+   * @return the stock's price data in CSV format
+   * @throws IllegalArgumentException if no price data could be fetched for the stock
+   */
+  String fetch(String stockSymbol, String outputSize, boolean waitForPermit)
+          throws IllegalArgumentException {
+    URL url;
+    try {
+      url = new URL(endpoint
+              .replace("{outputsize}", outputSize)
+              .replace("{symbol}", stockSymbol)
+              .replace("{apikey}", apiKey));
+    } catch (MalformedURLException e) {
+      throw new RuntimeException("The AlphaVantage API has either changed or "
+              + "no longer works");
+    }
+
+    String stockData;
+    try {
+      Long requestTime = acquireRequestPermit(waitForPermit);
+      if (requestTime == null) {
+        throw new IllegalArgumentException("No request for the price data of " + stockSymbol
+                + " can be started before the rate limit allows it");
+      }
+      URLConnection connection = url.openConnection();
+      try {
+        connection.connect();
+      } catch (IOException e) {
+        // a request that never reached the endpoint does not count towards the rate limit
+        releaseRequestPermit(requestTime);
+        throw e;
+      }
+      try (InputStream in = connection.getInputStream()) {
+        stockData = new String(in.readAllBytes(), StandardCharsets.US_ASCII);
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException("No price data found for " + stockSymbol);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalArgumentException("No price data found for " + stockSymbol);
+    }
+
+    // the API reports errors (unknown symbol, exceeded rate limit) as a JSON message
+    if (!stockData.startsWith(stockDataHeader)) {
+      throw new IllegalArgumentException("No price data found for " + stockSymbol);
+    }
+    return stockData;
+  }
+
+  /**
+   * Write the given stock data to the stock's data file, replacing the file atomically.
+   *
+   * @param stockSymbol the ticker symbol of the stock
+   * @param stockData   the stock's price data in CSV format
+   * @throws IOException if the file could not be written
+   */
+  void writeStockDataFile(String stockSymbol, String stockData) throws IOException {
+    stockDataFilesDirectory.mkdirs();
+    Path stockDataFile = Paths.get(stockDataFilesDirectory.getPath(),
+            stockSymbol + stockDataFileFormat);
+    Path tempFile = Paths.get(stockDataFilesDirectory.getPath(),
+            stockSymbol + stockDataFileFormat + ".tmp");
+    Files.write(tempFile, stockData.getBytes(StandardCharsets.US_ASCII));
+    Files.move(tempFile, stockDataFile, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private String fetchFull(String stockSymbol, boolean waitForPermit)
+          throws IllegalArgumentException {
+    String stockData = withoutUnclosedDays(fetch(stockSymbol, "full", waitForPermit));
+    if (stockDataFilesDirectory != null) {
+      try {
+        writeStockDataFile(stockSymbol, stockData);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return stockData;
+  }
+
+  private static int getLatestMarketDay(String stockData) {
+    // the rows are in descending order of date, so the latest date is in the first row
+    int rowStart = stockData.indexOf('\n') + 1;
+    if (rowStart == 0 || rowStart >= stockData.length()) {
+      return Integer.MIN_VALUE;
+    }
+    return getMarketDay(stockData.substring(rowStart));
+  }
+
+  private static String withoutUnclosedDays(String stockData) {
+    // the rows are in descending order of date, so the rows of the days that are not over yet
+    // are the leading rows
+    int lastClosedDay = getLastClosedMarketDay();
+    int headerEnd = stockData.indexOf('\n') + 1;
+    int rowStart = headerEnd;
+    while (rowStart > 0 && rowStart < stockData.length()) {
+      int rowEnd = stockData.indexOf('\n', rowStart);
+      String row = rowEnd < 0
+              ? stockData.substring(rowStart)
+              : stockData.substring(rowStart, rowEnd);
+      if (row.isBlank() || getMarketDay(row) <= lastClosedDay) {
+        break;
+      }
+      rowStart = rowEnd < 0 ? stockData.length() : rowEnd + 1;
+    }
+    return rowStart == headerEnd
+            ? stockData
+            : stockData.substring(0, headerEnd) + stockData.substring(rowStart);
+  }
+
+  private static int getMarketDay(String row) {
+    return (int) LocalDate.parse(row.substring(0, row.indexOf(','))).toEpochDay();
+  }
+
+  private static int getLastClosedMarketDay() {
+    // the prices of a day are complete once the day is over, so the latest complete prices are
+    // those of the last weekday before today
+    LocalDate day = LocalDate.now().minusDays(1);
+    while (day.getDayOfWeek() == DayOfWeek.SATURDAY || day.getDayOfWeek() == DayOfWeek.SUNDAY) {
+      day = day.minusDays(1);
+    }
+    return (int) day.toEpochDay();
+  }
+
+  private static boolean isCheckedSinceLastClose(Path checkedMarkerFile) throws IOException {
+    // the marker counts once it was written after the end of the last closed day
+    long lastCloseMillis = LocalDate.ofEpochDay(getLastClosedMarketDay() + 1)
+            .atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    return Files.isRegularFile(checkedMarkerFile)
+            && Files.getLastModifiedTime(checkedMarkerFile).toMillis() >= lastCloseMillis;
+  }
+
+  private Long acquireRequestPermit(boolean waitForPermit) throws InterruptedException {
+    synchronized (recentRequestTimes) {
+      while (true) {
+        long now = System.currentTimeMillis();
+        while (!recentRequestTimes.isEmpty()
+                && recentRequestTimes.peekFirst() <= now - rateLimitWindowMillis) {
+          recentRequestTimes.pollFirst();
+        }
+        if (recentRequestTimes.size() < requestsPerMinute) {
+          Long requestTime = now;
+          recentRequestTimes.addLast(requestTime);
+          return requestTime;
+        }
+        if (!waitForPermit) {
+          return null;
+        }
+        // a released permit wakes the waiting requests before the window has passed
+        recentRequestTimes.wait(Math.max(1,
+                recentRequestTimes.peekFirst() + rateLimitWindowMillis - now));
+      }
+    }
+  }
+
+  private void releaseRequestPermit(Long requestTime) {
+    synchronized (recentRequestTimes) {
+      recentRequestTimes.removeLastOccurrence(requestTime);
+      recentRequestTimes.notifyAll();
+    }
+  }
+
+  private static String getResult(Future<String> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("The stock data fetch was interrupted.");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+}
@@ -6,5 +6,6 @@ package model.stockdatastore;
  */
 public enum StockDataSource {
   API,
-  LocalDataFiles
+  LocalDataFiles,
+  BinaryDataFiles
 }
@@ -1,57 +1,138 @@
 package model.stockdatastore;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.Reader;
 import java.io.StringReader;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.nio.file.Paths;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.NoSuchElementException;
 
-import model.Stock;
+import model.CsvRecordReader;
 
 /**
  * The StockDataStore class represents a data store repository for stock price data.
  * This class provides methods for querying data from the stock data store.
  * StockDataStore implements the IStockDataStore interface.
+ * A StockDataStore can be shared between threads. Each stock's price series is loaded at most
+ * once: concurrent requests for a stock that is being loaded wait for that single load instead
+ * of starting their own, and loaded series are immutable, so they are read without locking.
+ * Loaded price series are kept off the heap in a StockPriceCache, which can be given a memory
+ * budget so that a store over a large number of stocks only holds the recently used ones.
+ * The supported stocks are numbered by a TickerSymbolTable, which also answers whether a stock is
+ * supported in constant time, and their cached price series can be looked up by that number.
  */
 public class StockDataStore implements IStockDataStore {
-  private final String alphaVantageApiKey = "2ZZHRYGHDR5SZH9R";
-
-  private final String alphaVantageApi = "https://www.alphavantage"
-          + ".co/query?function=TIME_SERIES_DAILY";
   private final String dataStoreFileFormat = ".csv";
-  private final String dataStoreFileFormatDelimiter = ",";
-  private List<String> supportedStocksList;
-  private final String stockDataFilesDirectory = "StockDataFiles";
-  private final String supportedStocksListFile = Paths.get(stockDataFilesDirectory,
-          "supported-stocks-list.txt").toString();
-  private final Map<String, List<IStockPrice>> stockData;
+  private final int closePriceColumn = 4;
+  private final List<String> supportedStocksList;
+  private final TickerSymbolTable tickerSymbols;
+  private final String stockDataFilesDirectory;
+  private final String supportedStocksListFile;
+  private final StockPriceCache stockData;
+  private final StockDataSource dataSource;
+  private final StockDataFetcher stockDataFetcher;
+  private volatile MarketCalendar marketCalendar;
 
   /**
    * Create a new StockDataStore initialized with the stock data stored in
    * the store's local storage. Initializing the store will also initialize the list of
-   * supported stocks in the store.
+   * supported stocks in the store. Stock prices are fetched from the API, and kept in the
+   * store's stock data files, which are refreshed incrementally when a stock is first used.
    */
   public StockDataStore() {
-    stockData = new HashMap<>();
+    this(StockDataSource.API);
+  }
+
+  /**
+   * Create a new StockDataStore initialized with the stock data stored in
+   * the store's local storage, which loads stock prices from the given data source.
+   * A stock's prices are loaded lazily, the first time a price of the stock is required.
+   * With the BinaryDataFiles data source, a stock's binary data file is memory mapped, and it is
+   * created from the stock's CSV data file if it does not exist yet, or if the CSV data file has
+   * been rewritten since.
+   *
+   * @param dataSource the data source from which stock prices are loaded
+   */
+  public StockDataStore(StockDataSource dataSource) {
+    this(dataSource, null);
+  }
+
+  /**
+   * Create a new StockDataStore initialized with the stock data stored in
+   * the store's local storage, which loads stock prices from the given data source, and fetches
+   * stock prices from the API with the given fetcher.
+   *
+   * @param dataSource       the data source from which stock prices are loaded
+   * @param stockDataFetcher the fetcher used for fetching stock prices from the API, or null for
+   *                         the default Alpha Vantage fetcher, which writes the fetched prices
+   *                         through to the store's stock data files
+   */
+  public StockDataStore(StockDataSource dataSource, StockDataFetcher stockDataFetcher) {
+    this(dataSource, stockDataFetcher, StockPriceCache.UNBOUNDED);
+  }
+
+  /**
+   * Create a new StockDataStore initialized with the stock data stored in
+   * the store's local storage, which loads stock prices from the given data source, fetches
+   * stock prices from the API with the given fetcher, and keeps the loaded prices within the
+   * given memory budget. When the budget is exceeded, the least recently used stocks' prices are
+   * evicted, and they are loaded again from the stock data files when they are next required.
+   *
+   * @param dataSource       the data source from which stock prices are loaded
+   * @param stockDataFetcher the fetcher used for fetching stock prices from the API, or null for
+   *                         the default Alpha Vantage fetcher, which writes the fetched prices
+   *                         through to the store's stock data files
+   * @param memoryBudget     the number of bytes the loaded stock prices may use, or
+   *                         StockPriceCache.UNBOUNDED
+   * @throws IllegalArgumentException if the memory budget is not positive
+   */
+  public StockDataStore(StockDataSource dataSource, StockDataFetcher stockDataFetcher,
+                        long memoryBudget) throws IllegalArgumentException {
+    this(new File("StockDataFiles"), dataSource, stockDataFetcher, memoryBudget);
+  }
+
+  /**
+   * Create a new StockDataStore initialized with the stock data stored in the given stock data
+   * files directory, which must contain the supported stocks list and the stocks' data files.
+   * The store loads stock prices from the given data source, fetches stock prices from the API
+   * with the given fetcher, and keeps the loaded prices within the given memory budget.
+   *
+   * @param stockDataFilesDirectory the directory containing the stock data files
+   * @param dataSource              the data source from which stock prices are loaded
+   * @param stockDataFetcher        the fetcher used for fetching stock prices from the API, or
+   *                                null for the default Alpha Vantage fetcher, which writes the
+   *                                fetched prices through to the given directory
+   * @param memoryBudget            the number of bytes the loaded stock prices may use, or
+   *                                StockPriceCache.UNBOUNDED
+   * @throws IllegalArgumentException if the memory budget is not positive
+   */
+  public StockDataStore(File stockDataFilesDirectory, StockDataSource dataSource,
+                        StockDataFetcher stockDataFetcher, long memoryBudget)
+          throws IllegalArgumentException {
+    this.stockDataFilesDirectory = stockDataFilesDirectory.getPath();
+    this.supportedStocksListFile = Paths.get(this.stockDataFilesDirectory,
+            "supported-stocks-list.txt").toString();
+    this.dataSource = dataSource;
+    this.stockDataFetcher = stockDataFetcher != null
+            ? stockDataFetcher
+            : new StockDataFetcher(stockDataFilesDirectory);
+    List<String> supportedStocks;
     try {
-      supportedStocksList = populateSupportedStocksList();
+      supportedStocks = populateSupportedStocksList();
     } catch (FileNotFoundException e) {
-      supportedStocksList = new ArrayList<>();
+      supportedStocks = new ArrayList<>();
     }
+    supportedStocksList = Collections.unmodifiableList(supportedStocks);
+    tickerSymbols = new TickerSymbolTable(supportedStocks);
+    stockData = new StockPriceCache(memoryBudget, tickerSymbols, this::loadStockPriceSeries);
   }
 
   @Override
@@ -59,62 +140,134 @@ public class StockDataStore implements IStockDataStore {
     return supportedStocksList;
   }
 
+  @Override
+  public TickerSymbolTable getTickerSymbolTable() {
+    return tickerSymbols;
+  }
+
   @Override
   public double getStockValue(String stockName, LocalDate date) throws NoSuchElementException {
-    // if stock data is not present for a stock, fetch it and add it
-    if (!stockData.containsKey(stockName)) {
-      List<IStockPrice> stockPrices = null;
-      try {
-        stockPrices = getStockPricesList(stockName, StockDataSource.API);
-      } catch (FileNotFoundException e) {
-        throw new RuntimeException(e);
-      }
-      stockData.put(stockName, stockPrices);
+    return getStockPriceSeries(stockName).getMarketPrice(date);
+  }
+
+  @Override
+  public double[][] getStockValues(String[] stockNames, LocalDate[] dates) {
+    IStockPriceSeries[] series = new IStockPriceSeries[stockNames.length];
+    for (int i = 0; i < stockNames.length; i++) {
+      int tickerId = tickerSymbols.getId(stockNames[i]);
+      series[i] = tickerId != TickerSymbolTable.NO_ID
+              ? getStockPriceSeries(tickerId)
+              : getStockPriceSeries(stockNames[i]);
     }
+    return getStockValues(series, dates);
+  }
 
-    List<IStockPrice> stockPriceList = stockData.get(stockName);
-    double stockPrice;
+  @Override
+  public double[][] getStockValues(int[] tickerIds, LocalDate[] dates)
+          throws IndexOutOfBoundsException {
+    IStockPriceSeries[] series = new IStockPriceSeries[tickerIds.length];
+    for (int i = 0; i < tickerIds.length; i++) {
+      series[i] = getStockPriceSeries(tickerIds[i]);
+    }
+    return getStockValues(series, dates);
+  }
 
-    try {
-      stockPrice = stockPriceList
-              .stream()
-              .filter(s -> s.getMarketDate().equals(date))
-              .findFirst()
-              .get()
-              .getMarketPrice();
-    } catch (NoSuchElementException e) {
-      throw new NoSuchElementException("Stock price for stock " + stockName + " is not present for "
-              + date.toString() + ". Please enter a valid date.");
+  private double[][] getStockValues(IStockPriceSeries[] series, LocalDate[] dates) {
+    // sort the dates once, remembering their original positions, so that every stock's
+    // series can be walked forward a single time
+    long[] packedDates = new long[dates.length];
+    for (int j = 0; j < dates.length; j++) {
+      packedDates[j] = (dates[j].toEpochDay() << 32) | j;
+    }
+    Arrays.sort(packedDates);
+
+    double[][] stockValues = new double[series.length][dates.length];
+    for (int i = 0; i < series.length; i++) {
+      double[] row = stockValues[i];
+      int size = series[i].size();
+      int cursor = 0;
+      if (dates.length > 0) {
+        cursor = series[i].indexOf((int) (packedDates[0] >> 32));
+        cursor = cursor < 0 ? -cursor - 1 : cursor;
+      }
+      for (long packedDate : packedDates) {
+        int day = (int) (packedDate >> 32);
+        while (cursor < size && series[i].getMarketDay(cursor) < day) {
+          cursor++;
+        }
+        row[(int) packedDate] = cursor < size && series[i].getMarketDay(cursor) == day
+                ? series[i].getMarketPrice(cursor)
+                : Double.NaN;
+      }
     }
-    return stockPrice;
+    return stockValues;
   }
 
   @Override
   public boolean isValidStockMarketDate(LocalDate date) {
-    try {
-      double stockValue = getStockValue(this.supportedStocksList.get(0), date);
-    } catch (NoSuchElementException e) {
-      return false;
-    }
-    return true;
+    return getMarketCalendar().isMarketDay((int) date.toEpochDay());
   }
 
   @Override
   public LocalDate getNextValidMarketDate(LocalDate date) {
-    LocalDate currentDate = date;
-    while (!isValidStockMarketDate(currentDate)) {
-      if (currentDate.isAfter(LocalDate.now().minusDays(1))) {
-        break;
-      } else {
-        currentDate = currentDate.plusDays(1);
-      }
+    int nextMarketDay = getMarketCalendar().getNextMarketDay((int) date.toEpochDay());
+    if (nextMarketDay != MarketCalendar.NO_MARKET_DAY) {
+      return LocalDate.ofEpochDay(nextMarketDay);
     }
-    return currentDate;
+
+    // there is no market date after the given date yet, so the closest date is today
+    LocalDate today = LocalDate.now();
+    return date.isAfter(today) ? date : today;
+  }
+
+  @Override
+  public LocalDate getPreviousValidMarketDate(LocalDate date) throws NoSuchElementException {
+    int previousMarketDay = getMarketCalendar().getPreviousMarketDay((int) date.toEpochDay());
+    if (previousMarketDay == MarketCalendar.NO_MARKET_DAY) {
+      throw new NoSuchElementException("There is no valid stock market date on or before "
+              + date + ".");
+    }
+    return LocalDate.ofEpochDay(previousMarketDay);
+  }
+
+  private MarketCalendar getMarketCalendar() {
+    // the market calendar is derived from the first supported stock's price series; building
+    // it twice in a race is harmless, since both threads build the same calendar
+    MarketCalendar calendar = marketCalendar;
+    if (calendar == null) {
+      calendar = new MarketCalendar(getStockPriceSeries(supportedStocksList.get(0)));
+      marketCalendar = calendar;
+    }
+    return calendar;
   }
 
   @Override
   public boolean isAcceptableStock(String stockName) {
-    return supportedStocksList.contains(stockName);
+    return tickerSymbols.contains(stockName);
+  }
+
+  @Override
+  public IStockPriceSeries getStockPriceSeries(String stockName) {
+    // if stock data is not present for a stock, fetch it and add it
+    return stockData.get(stockName);
+  }
+
+  @Override
+  public IStockPriceSeries getStockPriceSeries(int tickerId) throws IndexOutOfBoundsException {
+    return stockData.get(tickerId);
+  }
+
+  private IStockPriceSeries loadStockPriceSeries(String stockName) {
+    try {
+      if (dataSource.equals(StockDataSource.BinaryDataFiles)) {
+        // a mapped series is already kept off the heap, in the file's pages
+        return mapBinaryStockDataFile(stockName);
+      } else {
+        return new DirectStockPriceSeries(getStockPriceSeries(stockName, dataSource));
+      }
+    } catch (FileNotFoundException e) {
+      throw new RuntimeException(e);
+    }
   }
 
   private List<String> populateSupportedStocksList() throws FileNotFoundException {
@@ -140,25 +293,64 @@ public class StockDataStore implements IStockDataStore {
     return supportedStocksList;
   }
 
-  private List<IStockPrice> getStockPricesListFromCsv(File csvDataFile) {
-    List<IStockPrice> stockPrices = new ArrayList<>();
-
+  private IStockPriceSeries mapBinaryStockDataFile(String stockSymbol)
+          throws FileNotFoundException {
+    File binaryDataFile = new File(Paths.get(stockDataFilesDirectory,
+            stockSymbol + BinaryStockDataFile.FILE_EXTENSION).toUri());
+    File csvDataFile = new File(Paths.get(stockDataFilesDirectory,
+            stockSymbol + dataStoreFileFormat).toUri());
     try {
-      BufferedReader br = new BufferedReader(new FileReader(csvDataFile));
-      String line;
-
-      line = br.readLine(); // read first line but don't do anything with it
-      while ((line = br.readLine()) != null) {
-        IStockPrice stockPrice = readStringAsStockPrice(line);
-        stockPrices.add(stockPrice);
+      // a binary file carries the modification time of the CSV file it was converted from, so
+      // it is converted again once the CSV file has been rewritten (by a refresh)
+      if (!binaryDataFile.exists()
+              || (csvDataFile.isFile()
+              && csvDataFile.lastModified() != binaryDataFile.lastModified())) {
+        if (!csvDataFile.isFile()) {
+          throw new FileNotFoundException("The stock data file for stock"
+                  + stockSymbol
+                  + " does not exist.");
+        }
+        BinaryStockDataFile.convertCsvToBinary(csvDataFile, binaryDataFile);
+        binaryDataFile.setLastModified(csvDataFile.lastModified());
       }
+      return BinaryStockDataFile.map(stockSymbol, binaryDataFile);
+    } catch (FileNotFoundException e) {
+      throw e;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private IStockPriceSeries getStockPriceSeriesFromCsv(String stockSymbol, File csvDataFile) {
+    try {
+      return readStockPriceSeries(stockSymbol, new FileReader(csvDataFile));
     } catch (FileNotFoundException e) {
       throw new RuntimeException(e);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
+  }
+
+  private IStockPriceSeries readStockPriceSeries(String stockSymbol, Reader stockDataReader)
+          throws IOException {
+    int[] marketDays = new int[1024];
+    double[] marketPrices = new double[1024];
+    int size = 0;
+
+    try (CsvRecordReader reader = new CsvRecordReader(stockDataReader)) {
+      reader.nextRecord(); // read first line but don't do anything with it
+      while (reader.nextRecord()) {
+        if (size == marketDays.length) {
+          marketDays = Arrays.copyOf(marketDays, size * 2);
+          marketPrices = Arrays.copyOf(marketPrices, size * 2);
+        }
+        marketDays[size] = reader.getEpochDay(0);
+        marketPrices[size] = reader.getDouble(closePriceColumn);
+        size++;
+      }
+    }
 
-    return stockPrices;
+    return new StockPriceSeries(stockSymbol, marketDays, marketPrices, size);
   }
 
   private boolean areStockDataFilesPresent(String dir) {
@@ -170,22 +362,7 @@ public class StockDataStore implements IStockDataStore {
     }
   }
 
-  private Map<String, List<IStockPrice>> getStockData(List<String> stockSymbols)
-          throws FileNotFoundException {
-    if (stockSymbols.isEmpty()) {
-      throw new IllegalArgumentException("The provided list of stock symbols cannot be null"
-              + " or empty");
-    }
-
-    Map<String, List<IStockPrice>> stockData = new HashMap<>();
-    for (String stockSymbol : stockSymbols) {
-      List<IStockPrice> stockPrices = getStockPricesList(stockSymbol, StockDataSource.API);
-      stockData.put(stockSymbol, stockPrices);
-    }
-    return stockData;
-  }
-
-  private List<IStockPrice> getStockPricesList(String stockSymbol, StockDataSource dataSource)
+  private IStockPriceSeries getStockPriceSeries(String stockSymbol, StockDataSource dataSource)
           throws FileNotFoundException {
 
     if (dataSource.equals(StockDataSource.LocalDataFiles)) {
@@ -196,7 +373,7 @@ public class StockDataStore implements IStockDataStore {
       File stockDataFile = new File(Paths.get(stockDataFilesDirectory,
               stockSymbol + dataStoreFileFormat).toUri());
       if (stockDataFile.exists() && stockDataFile.isFile()) {
-        return getStockPricesListFromCsv(stockDataFile);
+        return getStockPriceSeriesFromCsv(stockSymbol, stockDataFile);
       } else {
         throw new FileNotFoundException("The stock data file for stock"
                 + stockSymbol
@@ -204,7 +381,7 @@ public class StockDataStore implements IStockDataStore {
       }
     } else if (dataSource.equals(StockDataSource.API)) {
       try {
-        return getStockPricesListFromApi(stockSymbol);
+        return getStockPriceSeriesFromApi(stockSymbol);
       } catch (IOException e) {
         throw new RuntimeException(e);
       }
@@ -213,98 +390,32 @@ public class StockDataStore implements IStockDataStore {
     return null;
   }
 
-  private List<IStockPrice> getStockPricesListFromApi(String stockSymbol) throws IOException {
-    StringBuilder apiOutput;
-
-    try {
-      apiOutput = getStockDataFromAlphaVantageApi(stockSymbol);
-    } catch (IOException e) {
-      throw e;
-    }
-
-    List<IStockPrice> stockPrices = new ArrayList<>();
-
-    try {
-      BufferedReader br = new BufferedReader(new StringReader(apiOutput.toString()));
-      String line;
-
-      line = br.readLine(); // read first line but don't do anything with it
-      while ((line = br.readLine()) != null) {
-        IStockPrice stockPrice = readStringAsStockPrice(line);
-        stockPrices.add(stockPrice);
-      }
-    } catch (IOException e) {
-      throw new RuntimeException(e);
-    }
-
-    return stockPrices;
-  }
-
-  private IStockPrice readStringAsStockPrice(String line) {
-    String[] values = line.split(dataStoreFileFormatDelimiter);
-    LocalDate marketDate = LocalDate.parse(values[0],
-            DateTimeFormatter.ofPattern(Stock.STOCK_PURCHASE_DATE_FORMAT));
-    double marketPrice = Double.parseDouble(values[4]);
-
-    IStockPrice stockPrice = new StockPrice(marketDate, marketPrice);
-    return stockPrice;
+  private IStockPriceSeries getStockPriceSeriesFromApi(String stockSymbol) throws IOException {
+    String apiOutput = stockDataFetcher.refresh(stockSymbol);
+    return readStockPriceSeries(stockSymbol, new StringReader(apiOutput));
   }
 
-  private void generateStockDataFiles(List<String> stockSymbols) throws IOException {
-    for (String stockSymbol : stockSymbols) {
-      StringBuilder apiOutput;
-
-      try {
-        apiOutput = getStockDataFromAlphaVantageApi(stockSymbol);
-      } catch (IOException e) {
-        throw e;
-      }
-
-      // write api output to file
-      try {
-        String stockDataFileName = stockSymbol + dataStoreFileFormat;
-        File f = new File(Paths.get(stockDataFilesDirectory, stockDataFileName).toUri());
-        if (!f.exists()) {
-          f.createNewFile();
-        }
-
-        FileWriter fw = new FileWriter(f);
-        BufferedWriter bw = new BufferedWriter(fw);
-        bw.write(apiOutput.toString());
-        bw.close();
-      } catch (IOException e) {
-        throw new RuntimeException(e);
-      }
-    }
+  /**
+   * Fetch the full price history of the given stocks from the API, in parallel, and write it to
+   * the store's stock data files.
+   *
+   * @param stockSymbols the ticker symbols of the stocks whose data files are to be generated
+   * @throws IllegalArgumentException if no price data could be fetched for one of the stocks
+   */
+  public void generateStockDataFiles(List<String> stockSymbols) throws IllegalArgumentException {
+    stockDataFetcher.fetchAll(stockSymbols);
   }
 
-  private StringBuilder getStockDataFromAlphaVantageApi(String stockSymbol) throws IOException {
-    URL url = null;
-
-    try {
-      url = new URL(alphaVantageApi
-              + "&outputsize=full"
-              + "&symbol=" + stockSymbol
-              + "&apikey=" + alphaVantageApiKey
-              + "&datatype=csv");
-    } catch (MalformedURLException e) {
-      throw new RuntimeException("The AlphaVantage API has either changed or "
-              + "no longer works");
-    }
-
-    InputStream in = null;
-    StringBuilder output = new StringBuilder();
-
-    try {
-      in = url.openStream();
-      int b;
-
-      while ((b = in.read()) != -1) {
-        output.append((char) b);
-      }
-    } catch (IOException e) {
-      throw new IllegalArgumentException("No price data found for " + stockSymbol);
-    }
-    return output;
+  /**
+   * Bring the store's stock data files of the given stocks up to date, by fetching only the
+   * prices that are newer than the ones already in the files. Stocks that have no data file yet
+   * are fetched in full.
+   *
+   * @param stockSymbols the ticker symbols of the stocks whose data files are to be refreshed
+   * @throws IllegalArgumentException if no price data could be fetched for a stock that has no
+   *                                  data file
+   */
+  public void refreshStockDataFiles(List<String> stockSymbols) throws IllegalArgumentException {
+    stockDataFetcher.refreshAll(stockSymbols);
   }
 }
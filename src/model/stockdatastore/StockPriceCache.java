@@ -0,0 +1,231 @@
+package model.stockdatastore;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * The StockPriceCache class keeps the price series of recently used stocks within a memory
+ * budget. A series that is not in the cache is loaded with the cache's loader, and when the
+ * series held by the cache use more memory than the budget allows, the least recently used
+ * series are evicted. An evicted series is loaded again the next time it is requested.
+ * The memory used by a series is taken as DirectStockPriceSeries.BYTES_PER_MARKET_DAY bytes per
+ * market date, which is what the series costs when it is kept off the heap.
+ * A StockPriceCache can be shared between threads. A series is loaded at most once at a time:
+ * concurrent requests for a series that is being loaded wait for that single load instead of
+ * starting their own. The cached series are also kept in order of use, so the least recently used
+ * series is evicted in constant time. Lookups of cached series in an unbounded cache do not lock,
+ * and in a cache with a budget they only hold the eviction lock to move the series to the most
+ * recently used end of that order.
+ * A cache that is given a TickerSymbolTable also looks its cached series up by ticker id, in an
+ * array indexed by id that sits in front of the symbol keyed entries. A series is published in
+ * that array when it is admitted and removed from it when it is evicted, so the array never
+ * keeps an evicted series alive.
+ */
+public class StockPriceCache {
+  /**
+   * The memory budget of a cache that never evicts a series.
+   */
+  public static final long UNBOUNDED = Long.MAX_VALUE;
+
+  private final long memoryBudget;
+  private final Function<String, IStockPriceSeries> loader;
+  private final TickerSymbolTable tickerSymbols;
+  private final AtomicReferenceArray<CacheEntry> entriesById;
+  private final ConcurrentMap<String, CacheEntry> entries;
+  private final Map<String, CacheEntry> usageOrder;
+  private final Object evictionLock;
+  private long memoryUsage;
+
+  /**
+   * Create a new StockPriceCache with the given memory budget, which loads missing price series
+   * with the given loader.
+   *
+   * @param memoryBudget the number of bytes the cached series may use, or UNBOUNDED
+   * @param loader       the function that loads the price series of a stock given its ticker
+   *                     symbol
+   * @throws IllegalArgumentException if the memory budget is not positive
+   */
+  public StockPriceCache(long memoryBudget, Function<String, IStockPriceSeries> loader)
+          throws IllegalArgumentException {
+    this(memoryBudget, new TickerSymbolTable(Collections.emptyList()), loader);
+  }
+
+  /**
+   * Create a new StockPriceCache with the given memory budget, which loads missing price series
+   * with the given loader, and which also looks the series of the stocks in the given table up
+   * by ticker id.
+   *
+   * @param memoryBudget  the number of bytes the cached series may use, or UNBOUNDED
+   * @param tickerSymbols the table that numbers the stocks which may be looked up by id
+   * @param loader        the function that loads the price series of a stock given its ticker
+   *                      symbol
+   * @throws IllegalArgumentException if the memory budget is not positive
+   */
+  public StockPriceCache(long memoryBudget, TickerSymbolTable tickerSymbols,
+                         Function<String, IStockPriceSeries> loader)
+          throws IllegalArgumentException {
+    if (memoryBudget <= 0) {
+      throw new IllegalArgumentException("The memory budget of the stock price cache must be "
+              + "positive.");
+    }
+    this.memoryBudget = memoryBudget;
+    this.loader = loader;
+    this.tickerSymbols = tickerSymbols;
+    this.entriesById = new AtomicReferenceArray<>(tickerSymbols.size());
+    this.entries = new ConcurrentHashMap<>();
+    // iterating in access order visits the least recently used series first
+    this.usageOrder = new LinkedHashMap<>(16, 0.75f, true);
+    this.evictionLock = new Object();
+  }
+
+  /**
+   * Get the price series of the given stock, loading it if it is not in the cache.
+   *
+   * @param stockName the ticker symbol of the stock
+   * @return the price series of the stock
+   * @throws RuntimeException if the series could not be loaded
+   */
+  public IStockPriceSeries get(String stockName) {
+    CacheEntry entry = entries.get(stockName);
+    boolean loadedHere = false;
+    if (entry == null) {
+      CacheEntry newEntry = new CacheEntry(stockName, tickerSymbols.getId(stockName),
+          new FutureTask<>(() -> loader.apply(stockName)));
+      entry = entries.putIfAbsent(stockName, newEntry);
+      if (entry == null) {
+        entry = newEntry;
+        loadedHere = true;
+        newEntry.loader.run();
+      }
+    }
+    if (!loadedHere && memoryBudget != UNBOUNDED) {
+      // an unbounded cache never evicts, so it does not keep its series in order of use
+      synchronized (evictionLock) {
+        usageOrder.get(stockName);
+      }
+    }
+
+    IStockPriceSeries series;
+    try {
+      series = entry.loader.get();
+    } catch (ExecutionException e) {
+      // forget the failed load, so that the stock can be loaded again later
+      entries.remove(stockName, entry);
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Loading the stock data for " + stockName
+              + " was interrupted.");
+    }
+
+    if (loadedHere) {
+      admit(entry, series);
+    }
+    return series;
+  }
+
+  /**
+   * Get the price series of the stock with the given ticker id, loading it if it is not in the
+   * cache. A cached series is found without looking its ticker symbol up.
+   *
+   * @param tickerId the id of the stock in the cache's ticker symbol table
+   * @return the price series of the stock
+   * @throws IndexOutOfBoundsException if the id is not in the cache's ticker symbol table
+   * @throws RuntimeException          if the series could not be loaded
+   */
+  public IStockPriceSeries get(int tickerId) throws IndexOutOfBoundsException {
+    CacheEntry entry = entriesById.get(tickerId);
+    if (entry == null) {
+      return get(tickerSymbols.getSymbol(tickerId));
+    }
+    if (memoryBudget != UNBOUNDED) {
+      synchronized (evictionLock) {
+        usageOrder.get(entry.stockName);
+      }
+    }
+    return entry.series;
+  }
+
+  /**
+   * Get the memory budget of this cache.
+   *
+   * @return the number of bytes the cached series may use
+   */
+  public long getMemoryBudget() {
+    return memoryBudget;
+  }
+
+  /**
+   * Get the memory currently used by the series held in this cache.
+   *
+   * @return the number of bytes used by the cached series
+   */
+  public long getMemoryUsage() {
+    synchronized (evictionLock) {
+      return memoryUsage;
+    }
+  }
+
+  /**
+   * Check if the price series of the given stock is currently held in this cache.
+   *
+   * @param stockName the ticker symbol of the stock
+   * @return true if the stock's series is cached, false otherwise
+   */
+  public boolean contains(String stockName) {
+    return entries.containsKey(stockName);
+  }
+
+  private void admit(CacheEntry admittedEntry, IStockPriceSeries series) {
+    synchronized (evictionLock) {
+      admittedEntry.weight = (long) series.size() * DirectStockPriceSeries.BYTES_PER_MARKET_DAY;
+      memoryUsage += admittedEntry.weight;
+      admittedEntry.series = series;
+      if (admittedEntry.tickerId != TickerSymbolTable.NO_ID) {
+        entriesById.set(admittedEntry.tickerId, admittedEntry);
+      }
+      if (memoryBudget == UNBOUNDED) {
+        return;
+      }
+      usageOrder.put(admittedEntry.stockName, admittedEntry);
+
+      // evict the least recently used series until the budget is met, but never the series
+      // that has just been loaded (the last one), since it is about to be used
+      Iterator<CacheEntry> iterator = usageOrder.values().iterator();
+      while (memoryUsage > memoryBudget && usageOrder.size() > 1) {
+        CacheEntry victim = iterator.next();
+        iterator.remove();
+        entries.remove(victim.stockName, victim);
+        if (victim.tickerId != TickerSymbolTable.NO_ID) {
+          entriesById.compareAndSet(victim.tickerId, victim, null);
+        }
+        memoryUsage -= victim.weight;
+      }
+    }
+  }
+
+  private static final class CacheEntry {
+    private final String stockName;
+    private final int tickerId;
+    private final FutureTask<IStockPriceSeries> loader;
+    private IStockPriceSeries series;
+    private long weight;
+
+    private CacheEntry(String stockName, int tickerId, FutureTask<IStockPriceSeries> loader) {
+      this.stockName = stockName;
+      this.tickerId = tickerId;
+      this.loader = loader;
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package model.stockdatastore;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The StockPriceSeries class implements the IStockPriceSeries interface.
+ * This class stores a stock's price history in columnar form, as a sorted array of market dates
+ * (epoch days) and a parallel array of closing prices, so that a price lookup is a binary search
+ * over primitive values instead of a scan over a list of IStockPrice objects.
+ * A StockPriceSeries is immutable once it is created.
+ */
+public class StockPriceSeries implements IStockPriceSeries {
+  private final String stockName;
+  private final int[] marketDays;
+  private final double[] marketPrices;
+
+  /**
+   * Create a new StockPriceSeries for the given stock, initialized with the given list of stock
+   * prices. The stock prices can be in any order, they are sorted by their market dates while
+   * creating the series. If the list contains more than one price for a market date, the first
+   * one is kept.
+   *
+   * @param stockName   the ticker symbol of the stock
+   * @param stockPrices the list of stock prices of the stock
+   */
+  public StockPriceSeries(String stockName, List<IStockPrice> stockPrices) {
+    this(stockName, getMarketDays(stockPrices), getMarketPrices(stockPrices), stockPrices.size());
+  }
+
+  /**
+   * Create a new StockPriceSeries for the given stock, initialized with the first size entries
+   * of the given market dates (epoch days) and their market prices. The market dates can be in
+   * any order, they are sorted while creating the series. If a market date occurs more than
+   * once, the first price given for it is kept.
+   *
+   * @param stockName    the ticker symbol of the stock
+   * @param marketDays   the market dates of the stock prices, as epoch days
+   * @param marketPrices the stock prices, one for each market date
+   * @param size         the number of stock prices to be taken from the given arrays
+   */
+  public StockPriceSeries(String stockName, int[] marketDays, double[] marketPrices, int size) {
+    long[] packedPrices = new long[size];
+    for (int i = 0; i < size; i++) {
+      // pack the market date and the original position together, so that the
+      // prices can be sorted by date with a primitive sort
+      packedPrices[i] = ((long) marketDays[i] << 32) | i;
+    }
+    Arrays.sort(packedPrices);
+
+    int[] days = new int[size];
+    double[] prices = new double[size];
+    int count = 0;
+    for (long packedPrice : packedPrices) {
+      int day = (int) (packedPrice >> 32);
+      if (count > 0 && days[count - 1] == day) {
+        continue;
+      }
+      days[count] = day;
+      prices[count] = marketPrices[(int) packedPrice];
+      count++;
+    }
+
+    this.stockName = stockName;
+    this.marketDays = count == size ? days : Arrays.copyOf(days, count);
+    this.marketPrices = count == size ? prices : Arrays.copyOf(prices, count);
+  }
+
+  @Override
+  public String getStockName() {
+    return stockName;
+  }
+
+  @Override
+  public int size() {
+    return marketDays.length;
+  }
+
+  @Override
+  public int getMarketDay(int index) {
+    return marketDays[index];
+  }
+
+  @Override
+  public double getMarketPrice(int index) {
+    return marketPrices[index];
+  }
+
+  @Override
+  public int indexOf(int epochDay) {
+    return Arrays.binarySearch(marketDays, epochDay);
+  }
+
+  @Override
+  public double getMarketPrice(LocalDate date) throws NoSuchElementException {
+    int index = indexOf((int) date.toEpochDay());
+    if (index < 0) {
+      throw new NoSuchElementException("Stock price for stock " + stockName
+              + " is not present for " + date + ". Please enter a valid date.");
+    }
+    return marketPrices[index];
+  }
+
+  private static int[] getMarketDays(List<IStockPrice> stockPrices) {
+    int[] marketDays = new int[stockPrices.size()];
+    for (int i = 0; i < marketDays.length; i++) {
+      marketDays[i] = (int) stockPrices.get(i).getMarketDate().toEpochDay();
+    }
+    return marketDays;
+  }
+
+  private static double[] getMarketPrices(List<IStockPrice> stockPrices) {
+    double[] marketPrices = new double[stockPrices.size()];
+    for (int i = 0; i < marketPrices.length; i++) {
+      marketPrices[i] = stockPrices.get(i).getMarketPrice();
+    }
+    return marketPrices;
+  }
+}
@@ -0,0 +1,91 @@
+package model.stockdatastore;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The TickerSymbolTable class maps the ticker symbols of a fixed set of stocks to dense integer
+ * ids, from 0 to size() - 1, in the order in which the symbols are first given. Callers that
+ * handle many stocks can look a symbol up once, and then keep their per stock data in arrays
+ * indexed by the symbol's id instead of in maps keyed by the symbol.
+ * A TickerSymbolTable is immutable, so it can be shared between threads.
+ */
+public final class TickerSymbolTable {
+  /**
+   * The id of a ticker symbol that is not in the table.
+   */
+  public static final int NO_ID = -1;
+
+  private final String[] symbols;
+  private final Map<String, Integer> ids;
+
+  /**
+   * Create a new TickerSymbolTable containing the given ticker symbols. A symbol that is given
+   * more than once keeps the id of its first occurrence.
+   *
+   * @param symbols the ticker symbols of the table
+   */
+  public TickerSymbolTable(List<String> symbols) {
+    this.ids = new HashMap<>(symbols.size() * 2);
+    String[] uniqueSymbols = new String[symbols.size()];
+    for (String symbol : symbols) {
+      if (ids.putIfAbsent(symbol, ids.size()) == null) {
+        uniqueSymbols[ids.size() - 1] = symbol;
+      }
+    }
+    this.symbols = Arrays.copyOf(uniqueSymbols, ids.size());
+  }
+
+  /**
+   * Get the id of the given ticker symbol.
+   *
+   * @param symbol the ticker symbol
+   * @return the id of the symbol, or NO_ID if the symbol is not in the table
+   */
+  public int getId(String symbol) {
+    Integer id = ids.get(symbol);
+    return id == null ? NO_ID : id;
+  }
+
+  /**
+   * Get the ticker symbol with the given id.
+   *
+   * @param id the id of the symbol, between 0 and size() - 1
+   * @return the ticker symbol
+   * @throws IndexOutOfBoundsException if there is no symbol with the given id
+   */
+  public String getSymbol(int id) throws IndexOutOfBoundsException {
+    return symbols[id];
+  }
+
+  /**
+   * Check if the given ticker symbol is in the table.
+   *
+   * @param symbol the ticker symbol
+   * @return true if the symbol is in the table, false otherwise
+   */
+  public boolean contains(String symbol) {
+    return ids.containsKey(symbol);
+  }
+
+  /**
+   * Get the number of ticker symbols in the table.
+   *
+   * @return the number of symbols, which is one more than the largest id
+   */
+  public int size() {
+    return symbols.length;
+  }
+
+  /**
+   * Get the ticker symbols of the table, in the order of their ids.
+   *
+   * @return a read-only list of the symbols
+   */
+  public List<String> getSymbols() {
+    return Collections.unmodifiableList(Arrays.asList(symbols));
+  }
+}
@@ -22,7 +22,10 @@ import controller.IController;
 import controller.PortfolioController;
 import model.IModel;
 import model.IPortfolioPerformanceData;
+import model.IPortfolioTimeSeries;
 import model.IStock;
+import model.PerformanceAggregation;
+import model.PerformanceStep;
 import model.Stock;
 import view.IView;
 
@@ -64,6 +67,11 @@ public class ControllerTest {
       return 0;
     }
 
+    @Override
+    public double[][] getPortfolioValues(String[] portfolioNames, LocalDate[] dates) {
+      return new double[portfolioNames.length][dates.length];
+    }
+
     @Override
     public List<IStock> examinePortfolioForADate(String portfolioNumber, LocalDate compositionDate)
             throws IndexOutOfBoundsException {
@@ -98,6 +106,11 @@ public class ControllerTest {
       //do nothing here
     }
 
+    @Override
+    public void flushPortfolioFiles() {
+      //do nothing here
+    }
+
     @Override
     public void setCommissionFee(float commissionFee, float feeReductionPercentage)
             throws IllegalArgumentException {
@@ -146,6 +159,16 @@ public class ControllerTest {
       return null;
     }
 
+    @Override
+    public IPortfolioTimeSeries getPortfolioPerformanceSeries(String portfolioName,
+                                                              LocalDate startDate,
+                                                              LocalDate endDate,
+                                                              PerformanceStep step,
+                                                              PerformanceAggregation aggregation)
+            throws IllegalArgumentException {
+      return null;
+    }
+
     @Override
     public List<IStock> getStockFromPortfolio(String pfName) {
       log.append("Portfolio name: " + pfName);
@@ -8,29 +8,49 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAdjusters;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.InputMismatchException;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import controller.IController;
+import model.CsvRecordReader;
 import model.IModel;
+import model.IPortfolio;
 import model.IPortfolioPerformanceData;
+import model.IPortfolioTimeSeries;
 import model.IStock;
+import model.PerformanceAggregation;
+import model.PerformanceStep;
+import model.Portfolio;
+import model.PortfolioFileFormat;
 import model.PortfolioModel;
+import model.PortfolioPerformanceData;
 import model.Stock;
 import model.stockdatastore.IStockDataStore;
+import model.stockdatastore.StockDataSource;
 import model.stockdatastore.StockDataStore;
+import model.stockdatastore.StockPriceCache;
 import view.IView;
 import view.PortfolioView;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -1067,12 +1087,12 @@ public class ModelTest {
     IStock stock1 = stocks.get(stocks.size() - 2);
     assertEquals("MSFT", stock1.getStockName());
     assertEquals(6.03, stock1.getStockQuantity(), 0.01);
-    assertEquals(investmentDate.toString(), stock1.getPurchaseDate());
+    assertEquals(investmentDate, stock1.getPurchaseDate());
 
     IStock stock2 = stocks.get(stocks.size() - 1);
     assertEquals("GOOG", stock2.getStockName());
     assertEquals(0.31, stock2.getStockQuantity(), 0.01);
-    assertEquals(investmentDate.toString(), stock2.getPurchaseDate());
+    assertEquals(investmentDate, stock2.getPurchaseDate());
 
 
     // test when the investment date is not available
@@ -1165,5 +1185,773 @@ public class ModelTest {
 
     return stocks;
   }
-}
 
+  /**
+   * Test that the CSV record reader parses fields the same way as the string based parsing.
+   */
+  @Test
+  public void testCsvRecordReader() throws IOException {
+    String csv = "timestamp,open,high,low,close,volume\r\n"
+            + "2022-10-31,153.1550,154.2400,151.9200,153.3400,97943171\n"
+            + " AAPL , 10.00 ,2022-02-30,\n"
+            + "\n"
+            + "MSFT,-0.1,1999-12-31";
+    CsvRecordReader reader = new CsvRecordReader(new StringReader(csv));
+
+    assertTrue(reader.nextRecord());
+    assertEquals(6, reader.getFieldCount());
+    assertEquals("timestamp", reader.getString(0));
+
+    assertTrue(reader.nextRecord());
+    assertEquals(LocalDate.of(2022, 10, 31).toEpochDay(), reader.getEpochDay(0));
+    assertEquals(Double.parseDouble("153.1550"), reader.getDouble(1), 0.0);
+    assertEquals(Double.parseDouble("153.3400"), reader.getDouble(4), 0.0);
+    assertEquals(97943171d, reader.getDouble(5), 0.0);
+
+    assertTrue(reader.nextRecord());
+    assertEquals(3, reader.getFieldCount());
+    assertEquals("AAPL", reader.getString(0));
+    assertTrue(reader.isWholeNumber(1));
+    assertEquals(10f, reader.getFloat(1), 0.0);
+    assertEquals(LocalDate.parse("2022-02-30", DateTimeFormatter.ofPattern("yyyy-MM-dd"))
+            .toEpochDay(), reader.getEpochDay(2));
+
+    assertTrue(reader.nextRecord());
+    assertTrue(reader.isEmptyRecord());
+    assertEquals(1, reader.getFieldCount());
+
+    assertTrue(reader.nextRecord());
+    assertFalse(reader.isWholeNumber(1));
+    assertEquals(Float.parseFloat("-0.1"), reader.getFloat(1), 0.0);
+    assertEquals(LocalDate.of(1999, 12, 31).toEpochDay(), reader.getEpochDay(2));
+    assertFalse(reader.nextRecord());
+  }
+
+  /**
+   * Test that a portfolio values only the stocks purchased on or before a date, for lots that
+   * are added out of date order, merged, and deleted.
+   */
+  @Test
+  public void testPortfolioValueOfLots() {
+    IStockDataStore dataStore = new StockDataStore(StockDataSource.LocalDataFiles);
+    IPortfolio portfolio = new Portfolio("lots");
+    LocalDate firstDate = LocalDate.of(2022, 10, 20);
+    LocalDate secondDate = LocalDate.of(2022, 10, 24);
+    LocalDate valuationDate = LocalDate.of(2022, 10, 28);
+    portfolio.addStock(dataStore, new Stock("MSFT", 10, secondDate), 0);
+    portfolio.addStock(dataStore, new Stock("MSFT", 5, firstDate), 0);
+    portfolio.addStock(dataStore, new Stock("AAPL", 2, secondDate), 0);
+    portfolio.addStock(dataStore, new Stock("MSFT", 1, secondDate), 0);
+
+    double msftPrice = dataStore.getStockValue("MSFT", valuationDate);
+    double aaplPrice = dataStore.getStockValue("AAPL", valuationDate);
+    assertEquals(3, portfolio.getStocksList().size());
+    assertEquals(16 * msftPrice + 2 * aaplPrice,
+            portfolio.getPortfolioValue(dataStore, valuationDate), 0.001);
+    assertEquals(5 * dataStore.getStockValue("MSFT", firstDate),
+            portfolio.getPortfolioValue(dataStore, firstDate), 0.001);
+    assertEquals(0, portfolio.getPortfolioValue(dataStore, firstDate.minusDays(1)), 0.0);
+
+    portfolio.deleteStock(portfolio.getStocksList().get(1));
+    assertEquals(11 * msftPrice + 2 * aaplPrice,
+            portfolio.getPortfolioValue(dataStore, valuationDate), 0.001);
+    assertEquals(0, portfolio.getPortfolioValue(dataStore, firstDate), 0.0);
+  }
+
+  /**
+   * Test that a portfolio is valued with a data store that numbers its stocks differently from
+   * the store the portfolio's stocks were added with, and that it rejects a store which does not
+   * support one of its stocks.
+   */
+  @Test
+  public void testPortfolioValueWithAnotherDataStore() throws IOException {
+    IStockDataStore dataStore = new StockDataStore(StockDataSource.LocalDataFiles);
+    File otherDirectory = Files.createTempDirectory("StockDataFiles").toFile();
+    try {
+      Files.writeString(new File(otherDirectory, "supported-stocks-list.txt").toPath(),
+              "MSFT\nAAPL\n");
+      for (String stockName : new String[]{"MSFT", "AAPL"}) {
+        Files.copy(new File("StockDataFiles", stockName + ".csv").toPath(),
+                new File(otherDirectory, stockName + ".csv").toPath());
+      }
+      IStockDataStore otherDataStore = new StockDataStore(otherDirectory,
+              StockDataSource.LocalDataFiles, null, StockPriceCache.UNBOUNDED);
+      LocalDate purchaseDate = LocalDate.of(2022, 10, 24);
+      LocalDate valuationDate = LocalDate.of(2022, 10, 28);
+      double msftPrice = dataStore.getStockValue("MSFT", valuationDate);
+      double aaplPrice = dataStore.getStockValue("AAPL", valuationDate);
+
+      IPortfolio portfolio = new Portfolio("stores");
+      portfolio.addStock(dataStore, new Stock("MSFT", 3, purchaseDate), 0);
+      assertEquals(3 * msftPrice, portfolio.getPortfolioValue(otherDataStore, valuationDate),
+              0.001);
+      portfolio.addStock(otherDataStore, new Stock("AAPL", 2, purchaseDate), 0);
+      assertEquals(3 * msftPrice + 2 * aaplPrice,
+              portfolio.getPortfolioValue(dataStore, valuationDate), 0.001);
+      assertEquals(3 * msftPrice + 2 * aaplPrice,
+              portfolio.getPortfolioValue(otherDataStore, valuationDate), 0.001);
+
+      portfolio.addStock(dataStore, new Stock("GOOG", 1, purchaseDate), 0);
+      try {
+        portfolio.getPortfolioValue(otherDataStore, valuationDate);
+        fail("A portfolio should not be valued with a store that does not support its stocks");
+      } catch (IllegalArgumentException e) {
+        assertEquals("The program does not support the provided stock name 'GOOG'",
+                e.getMessage());
+      }
+    } finally {
+      for (File file : otherDirectory.listFiles()) {
+        file.delete();
+      }
+      otherDirectory.delete();
+    }
+  }
+
+  /**
+   * Test that a stock keeps its purchase date as a date and its quantity in exact units.
+   */
+  @Test
+  public void testStockQuantityUnits() {
+    IStock stock = new Stock("MSFT", 0.1f, "2022-10-20");
+    assertEquals(LocalDate.of(2022, 10, 20), stock.getPurchaseDate());
+    assertEquals(1000, stock.getQuantityUnits());
+
+    IStock updatedStock = stock.addStockQuantity(0.2f);
+    assertEquals(3000, updatedStock.getQuantityUnits());
+    assertEquals(0.3f, updatedStock.getStockQuantity(), 0.0);
+    assertEquals("MSFT,0.3,2022-10-20", updatedStock.getStockDataAsCsv());
+    assertEquals(25 * Stock.QUANTITY_SCALE,
+            Stock.ofQuantityUnits("MSFT", 25 * Stock.QUANTITY_SCALE, LocalDate.of(2022, 10, 20))
+                    .getQuantityUnits());
+  }
+
+  /**
+   * Test that the cost basis of a portfolio on a date sums the amounts invested on or before the
+   * date, including amounts added before existing dates.
+   */
+  @Test
+  public void testCostBasisOnDates() {
+    IPortfolio portfolio = new Portfolio("costBasis");
+    HashMap<LocalDate, Double> costBasisMap = new HashMap<>();
+    costBasisMap.put(LocalDate.of(2022, 10, 24), 200.0);
+    costBasisMap.put(LocalDate.of(2022, 10, 20), 100.0);
+    portfolio.setCostBasisMap(costBasisMap);
+
+    assertEquals(0, portfolio.getCostBasis(LocalDate.of(2022, 10, 19)), 0.0);
+    assertEquals(100, portfolio.getCostBasis(LocalDate.of(2022, 10, 21)), 0.0);
+    assertEquals(300, portfolio.getCostBasis(LocalDate.of(2022, 10, 24)), 0.0);
+
+    IStockDataStore dataStore = new StockDataStore(StockDataSource.LocalDataFiles);
+    LocalDate purchaseDate = LocalDate.of(2022, 10, 17);
+    portfolio.addStock(dataStore, new Stock("MSFT", 1, purchaseDate), 5);
+    double investedAmount = dataStore.getStockValue("MSFT", purchaseDate) + 5;
+    assertEquals(investedAmount, portfolio.getCostBasis(purchaseDate), 0.001);
+    assertEquals(300 + investedAmount, portfolio.getCostBasis(LocalDate.of(2022, 10, 28)),
+            0.001);
+    assertEquals(List.of(purchaseDate, LocalDate.of(2022, 10, 20), LocalDate.of(2022, 10, 24)),
+            new ArrayList<>(portfolio.getCostBasisMap().keySet()));
+  }
+
+  /**
+   * Test that every frame of a portfolio's monthly performance data is the value of the stocks
+   * purchased by the frame's date.
+   */
+  @Test
+  public void testMonthlyPerformanceDataOfLots() {
+    IStockDataStore dataStore = new StockDataStore(StockDataSource.LocalDataFiles);
+    IPortfolio portfolio = new Portfolio("performance");
+    portfolio.addStock(dataStore, new Stock("MSFT", 10, LocalDate.of(2022, 2, 1)), 0);
+    portfolio.addStock(dataStore, new Stock("AAPL", 5, LocalDate.of(2022, 5, 2)), 0);
+    portfolio.addStock(dataStore, new Stock("MSFT", 3, LocalDate.of(2022, 8, 1)), 0);
+
+    List<PortfolioPerformanceData.PerformanceDataFrame> frames = portfolio
+            .getPerformanceData(LocalDate.of(2022, 1, 3), LocalDate.of(2022, 9, 30), dataStore)
+            .getPerformanceData();
+    assertEquals(9, frames.size());
+    LocalDate month = LocalDate.of(2022, 1, 1);
+    for (PortfolioPerformanceData.PerformanceDataFrame frame : frames) {
+      LocalDate frameDate = month.with(TemporalAdjusters.lastDayOfMonth());
+      while (frameDate.getDayOfWeek() == DayOfWeek.SATURDAY
+              || frameDate.getDayOfWeek() == DayOfWeek.SUNDAY) {
+        frameDate = frameDate.minusDays(1);
+      }
+      frameDate = dataStore.getNextValidMarketDate(frameDate);
+      assertEquals(portfolio.getPortfolioValue(dataStore, frameDate), frame.getPortfolioValue(),
+              0.001);
+      month = month.plusMonths(1);
+    }
+    assertEquals(0, frames.get(0).getPortfolioValue(), 0.0);
+  }
+
+  /**
+   * Test that a portfolio's performance series has a point per sampled trading day.
+   */
+  @Test
+  public void testPerformanceSeries() {
+    IStockDataStore dataStore = new StockDataStore(StockDataSource.LocalDataFiles);
+    IPortfolio portfolio = new Portfolio("series");
+    portfolio.addStock(dataStore, new Stock("MSFT", 10, LocalDate.of(2022, 2, 1)), 0);
+    portfolio.addStock(dataStore, new Stock("AAPL", 5, LocalDate.of(2022, 5, 2)), 0);
+    LocalDate startDate = LocalDate.of(2022, 1, 3);
+    LocalDate endDate = LocalDate.of(2022, 6, 30);
+
+    // a daily series has a point for every trading day, valued as the portfolio on that day
+    IPortfolioTimeSeries daily = portfolio.getPerformanceSeries(startDate, endDate,
+            PerformanceStep.daily(), PerformanceAggregation.LAST, dataStore);
+    assertTrue(daily.size() > 100);
+    for (int i = 0; i < daily.size(); i++) {
+      assertTrue(dataStore.isValidStockMarketDate(daily.getDate(i)));
+      assertEquals(portfolio.getPortfolioValue(dataStore, daily.getDate(i)),
+              daily.getValue(i), 0.001);
+    }
+
+    // a monthly series is dated on the last trading day of every month
+    IPortfolioTimeSeries monthlyLast = portfolio.getPerformanceSeries(startDate, endDate,
+            PerformanceStep.monthly(), PerformanceAggregation.LAST, dataStore);
+    IPortfolioTimeSeries monthlyMax = portfolio.getPerformanceSeries(startDate, endDate,
+            PerformanceStep.monthly(), PerformanceAggregation.MAX, dataStore);
+    IPortfolioTimeSeries monthlyMin = portfolio.getPerformanceSeries(startDate, endDate,
+            PerformanceStep.monthly(), PerformanceAggregation.MIN, dataStore);
+    assertEquals(6, monthlyLast.size());
+    for (int i = 0; i < monthlyLast.size(); i++) {
+      LocalDate date = monthlyLast.getDate(i);
+      assertEquals(i + 1, date.getMonthValue());
+      assertFalse(dataStore.getNextValidMarketDate(date.plusDays(1)).getMonthValue()
+              == date.getMonthValue());
+      assertEquals(portfolio.getPortfolioValue(dataStore, date), monthlyLast.getValue(i), 0.001);
+      assertTrue(monthlyMin.getValue(i) <= monthlyLast.getValue(i));
+      assertTrue(monthlyMax.getValue(i) >= monthlyLast.getValue(i));
+    }
+    assertEquals(0, monthlyMax.getValue(0), 0.0);
+    double februaryMin = Double.MAX_VALUE;
+    double februaryMax = 0;
+    for (int i = 0; i < daily.size(); i++) {
+      if (daily.getDate(i).getMonthValue() == 2) {
+        februaryMin = Math.min(februaryMin, daily.getValue(i));
+        februaryMax = Math.max(februaryMax, daily.getValue(i));
+      }
+    }
+    assertEquals(februaryMin, monthlyMin.getValue(1), 0.001);
+    assertEquals(februaryMax, monthlyMax.getValue(1), 0.001);
+
+    // a step of N trading days has a point for every N trading days
+    IPortfolioTimeSeries everyFiveDays = portfolio.getPerformanceSeries(startDate, endDate,
+            PerformanceStep.tradingDays(5), PerformanceAggregation.LAST, dataStore);
+    assertEquals((daily.size() + 4) / 5, everyFiveDays.size());
+    assertEquals(daily.getEpochDay(4), everyFiveDays.getEpochDay(0));
+  }
+
+  /**
+   * Test that portfolios valued together match the portfolios valued one by one.
+   */
+  @Test
+  public void testParallelPortfolioValues() {
+    IModel model = new PortfolioModel();
+    model.deleteAllPortfolioFiles();
+    try {
+      model.createPortfolio("first", new File(testingCsv));
+      model.createPortfolio("second", new File(testingCsv));
+    } catch (IOException e) {
+      fail("Portfolio could not be created");
+    }
+    model.addStockToPortfolio("second", "MSFT", 12, "2022-03-01");
+
+    IStockDataStore dataStore = new StockDataStore();
+    String[] portfolioNames = {"second", "first"};
+    LocalDate[] dates = new LocalDate[40];
+    for (int i = 0; i < dates.length; i++) {
+      dates[i] = dataStore.getNextValidMarketDate(LocalDate.of(2022, 1, 3).plusDays(i * 7L));
+    }
+    double[][] values = model.getPortfolioValues(portfolioNames, dates);
+    assertEquals(2, values.length);
+    for (int i = 0; i < portfolioNames.length; i++) {
+      assertEquals(dates.length, values[i].length);
+      for (int j = 0; j < dates.length; j++) {
+        assertEquals(model.getPortfolioValue(portfolioNames[i], dates[j]), values[i][j], 0.001);
+      }
+    }
+    assertTrue(values[0][dates.length - 1] > values[1][dates.length - 1]);
+
+    try {
+      model.getPortfolioValues(new String[]{"first", "missing"}, dates);
+      fail("A portfolio that does not exist should not have been valued");
+    } catch (IllegalArgumentException e) {
+      assertEquals("The given portfolio 'missing' does not exist.", e.getMessage());
+    }
+    try {
+      model.getPortfolioValues(portfolioNames, new LocalDate[]{LocalDate.now().plusDays(1)});
+      fail("A future date should not have been accepted");
+    } catch (IllegalArgumentException e) {
+      // pass
+    }
+    model.deleteAllPortfolioFiles();
+  }
+
+  /**
+   * Test that portfolios are looked up by name, and that each name is used only once.
+   */
+  @Test
+  public void testPortfolioLookupByName() {
+    IModel model = new PortfolioModel();
+    model.deleteAllPortfolioFiles();
+    try {
+      model.createPortfolio("first", new File(testingCsv));
+      model.createPortfolio("second", new File(testingCsv));
+    } catch (IOException e) {
+      fail("Portfolio could not be created");
+    }
+    try {
+      model.createPortfolio("second", new File(testingCsv));
+      fail("A portfolio name that already exists should not have been accepted");
+    } catch (FileAlreadyExistsException e) {
+      // pass
+    } catch (IOException e) {
+      fail("Portfolio could not be created");
+    }
+    assertEquals(List.of("first", "second"), model.getPortfolioNames());
+
+    // stocks are sold from the named portfolio, not from the first one
+    model.sellStocksFromPortfolio("second", "MSFT", 40, LocalDate.of(2022, 10, 28));
+    assertEquals(2, model.examinePortfolio("first").size());
+    assertEquals(100, model.examinePortfolio("first").stream()
+            .filter(stock -> stock.getStockName().equals("MSFT"))
+            .mapToDouble(IStock::getStockQuantity)
+            .sum(), 0.001);
+    assertEquals(60, model.examinePortfolio("second").stream()
+            .filter(stock -> stock.getStockName().equals("MSFT"))
+            .mapToDouble(IStock::getStockQuantity)
+            .sum(), 0.001);
+    assertTrue(model.isValidTickerSymbol("AAPL", 2));
+    assertEquals(null, model.examinePortfolio("third"));
+
+    // the portfolios read back from their files are looked up in the same order
+    IModel retrievedModel = new PortfolioModel();
+    retrievedModel.retrieveExistingPortfolios();
+    assertEquals(List.of("first", "second"), retrievedModel.getPortfolioNames());
+    assertEquals(model.getPortfolioValue("second", LocalDate.of(2022, 10, 28)),
+            retrievedModel.getPortfolioValue("second", LocalDate.of(2022, 10, 28)), 0.001);
+
+    try {
+      model.createPortfolioWithDollarCostAveraging("first", 1000,
+              LocalDate.of(2022, 1, 3), LocalDate.of(2022, 2, 1), 10, Map.of("MSFT", 100f));
+      fail("A portfolio name that already exists should not have been accepted");
+    } catch (IllegalArgumentException e) {
+      // pass
+    }
+
+    // of concurrent creations of portfolios with the same name, only one is added
+    long createdCount = IntStream.range(0, 8).parallel().filter(i -> {
+      try {
+        model.createPortfolio("raced", new File(testingCsv));
+        return true;
+      } catch (FileAlreadyExistsException e) {
+        return false;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }).count();
+    assertEquals(1, createdCount);
+    assertEquals(List.of("first", "second", "raced"), model.getPortfolioNames());
+    model.deleteAllPortfolioFiles();
+    assertTrue(model.isPortfolioListEmpty());
+    assertEquals(null, model.examinePortfolio("first"));
+  }
+
+  /**
+   * Test that logged trades, and not a torn record, are replayed and compacted.
+   */
+  @Test
+  public void testTransactionLogRecovery() throws IOException {
+    IModel model = new PortfolioModel();
+    model.deleteAllPortfolioFiles();
+    try {
+      model.createPortfolio("logged", new File(testingCsv));
+    } catch (IOException e) {
+      fail("Portfolio could not be created");
+    }
+    File snapshotFile = new File("Portfolios/logged.csv");
+    File logFile = new File("Portfolios/logged-transactions.log");
+    long snapshotLength = snapshotFile.length();
+
+    // trades are appended to the log, and the snapshot is left as it is
+    model.setCommissionFee(5, 10);
+    model.addStockToPortfolio("logged", "GOOG", 12, "2022-03-01");
+    model.addStockToPortfolio("logged", "MSFT", 3, "2022-10-28");
+    model.sellStocksFromPortfolio("logged", "GOOG", 2, LocalDate.of(2022, 6, 1));
+    assertEquals(snapshotLength, snapshotFile.length());
+    assertTrue(logFile.exists());
+
+    // each record holds the exact amount its trade added to the cost basis, which is the price
+    // plus the fee, or nothing for a trade combined with an existing stock
+    IStockDataStore dataStore = new StockDataStore();
+    List<String> records = Files.readAllLines(logFile.toPath());
+    assertEquals("GOOG,12.0,2022-03-01,"
+            + (dataStore.getStockValue("GOOG", LocalDate.of(2022, 3, 1)) + 5f), records.get(0));
+    assertEquals("MSFT,3.0,2022-10-28,0.0", records.get(1));
+    float sellFee = 5f * (1 - 10f / 100) * (1 - 10f / 100);
+    assertEquals("GOOG,-2.0,2022-06-01,"
+            + (dataStore.getStockValue("GOOG", LocalDate.of(2022, 6, 1)) + sellFee),
+            records.get(2));
+
+    IModel retrievedModel = new PortfolioModel();
+    retrievedModel.retrieveExistingPortfolios();
+    assertEquals(model.examinePortfolio("logged").size(),
+            retrievedModel.examinePortfolio("logged").size());
+    for (LocalDate date : new LocalDate[]{LocalDate.of(2022, 3, 1), LocalDate.of(2022, 6, 1),
+        LocalDate.of(2022, 10, 28)}) {
+      assertEquals(model.getPortfolioValue("logged", date),
+              retrievedModel.getPortfolioValue("logged", date), 0.001);
+      assertEquals(model.getCostBasis("logged", date),
+              retrievedModel.getCostBasis("logged", date), 0.001);
+    }
+
+    // a record torn by a crash, here inside its cost basis amount, is ignored, and it is cut off
+    // before the next trade is appended
+    String log = Files.readString(logFile.toPath());
+    Files.writeString(logFile.toPath(), log + "GOOG,12.0,2022-03-01,27");
+    retrievedModel = new PortfolioModel();
+    retrievedModel.retrieveExistingPortfolios();
+    assertEquals(log, Files.readString(logFile.toPath()));
+    assertEquals(model.examinePortfolio("logged").size(),
+            retrievedModel.examinePortfolio("logged").size());
+    assertEquals(model.getCostBasis("logged", LocalDate.of(2022, 3, 1)),
+            retrievedModel.getCostBasis("logged", LocalDate.of(2022, 3, 1)), 0.001);
+
+    // once the log outgrows the snapshot, it is compacted into a new snapshot
+    LocalDate tradeDate = LocalDate.of(2010, 1, 4);
+    for (int i = 0; i < 3000; i++) {
+      tradeDate = dataStore.getNextValidMarketDate(tradeDate);
+      model.addStockToPortfolio("logged", "MSFT", 1, tradeDate.toString());
+      tradeDate = tradeDate.plusDays(1);
+    }
+    assertTrue(snapshotFile.length() > snapshotLength);
+    assertTrue(logFile.length() < snapshotFile.length());
+
+    retrievedModel = new PortfolioModel();
+    retrievedModel.retrieveExistingPortfolios();
+    assertEquals(model.examinePortfolio("logged").size(),
+            retrievedModel.examinePortfolio("logged").size());
+    assertEquals(model.getPortfolioValue("logged", LocalDate.of(2022, 10, 28)),
+            retrievedModel.getPortfolioValue("logged", LocalDate.of(2022, 10, 28)), 0.001);
+    assertEquals(model.getCostBasis("logged", LocalDate.of(2022, 10, 28)),
+            retrievedModel.getCostBasis("logged", LocalDate.of(2022, 10, 28)), 0.001);
+    model.deleteAllPortfolioFiles();
+  }
+
+  /**
+   * Test that a dollar cost averaging plan is stored as a single snapshot.
+   */
+  @Test
+  public void testDollarCostAveragingWrittenOnce() {
+    IModel model = new PortfolioModel();
+    model.deleteAllPortfolioFiles();
+    model.setCommissionFee(5, 10);
+    Map<String, Float> investments = new HashMap<>();
+    investments.put("AAPL", 30f);
+    investments.put("MSFT", 70f);
+    model.createPortfolioWithDollarCostAveraging("weekly", 1000,
+            LocalDate.of(2015, 1, 5), LocalDate.of(2022, 10, 28), 7, investments);
+
+    // the plan is written as a single snapshot, without any logged trades
+    assertTrue(new File("Portfolios/weekly.csv").exists());
+    assertFalse(new File("Portfolios/weekly-transactions.log").exists());
+    assertTrue(model.examinePortfolio("weekly").size() > 700);
+
+    // the plan is built as if its lots had been added one by one, each with the fee of its turn
+    IStockDataStore dataStore = new StockDataStore();
+    IPortfolio expected = new Portfolio("weekly");
+    float fee = 5;
+    for (IStock stock : model.examinePortfolio("weekly")) {
+      expected.addStock(dataStore, stock, fee);
+      fee = fee * (1 - (10f / 100));
+    }
+    for (LocalDate date = LocalDate.of(2015, 1, 5); date.isBefore(LocalDate.of(2022, 10, 1));
+         date = date.plusMonths(5)) {
+      LocalDate marketDate = dataStore.getNextValidMarketDate(date);
+      assertEquals(expected.getCostBasis(marketDate), model.getCostBasis("weekly", marketDate),
+              1e-6);
+      assertEquals(expected.getPortfolioValue(dataStore, marketDate),
+              model.getPortfolioValue("weekly", marketDate), 1e-6);
+    }
+
+    IModel retrievedModel = new PortfolioModel();
+    retrievedModel.retrieveExistingPortfolios();
+    assertEquals(model.examinePortfolio("weekly").size(),
+            retrievedModel.examinePortfolio("weekly").size());
+    assertEquals(model.getPortfolioValue("weekly", LocalDate.of(2022, 10, 28)),
+            retrievedModel.getPortfolioValue("weekly", LocalDate.of(2022, 10, 28)), 0.01);
+    assertEquals(model.getCostBasis("weekly", LocalDate.of(2022, 10, 28)),
+            retrievedModel.getCostBasis("weekly", LocalDate.of(2022, 10, 28)), 0.01);
+
+    // a plan with an unsupported stock creates no portfolio
+    investments.put("NOTASTOCK", 10f);
+    try {
+      model.createPortfolioWithDollarCostAveraging("failed", 1000,
+              LocalDate.of(2021, 1, 4), LocalDate.of(2021, 6, 1), 7, investments);
+      fail("An unsupported stock should not have been accepted");
+    } catch (IllegalArgumentException e) {
+      // pass
+    }
+    assertEquals(null, model.examinePortfolio("failed"));
+    assertFalse(new File("Portfolios/failed.csv").exists());
+    model.deleteAllPortfolioFiles();
+  }
+
+  /**
+   * Test that an interrupted write is discarded, or completed if it was committed.
+   */
+  @Test
+  public void testInterruptedWriteRecovery() throws IOException {
+    IModel model = new PortfolioModel(1, 0);
+    model.deleteAllPortfolioFiles();
+    try {
+      model.createPortfolio("atomic", new File(testingCsv));
+    } catch (IOException e) {
+      fail("Portfolio could not be created");
+    }
+    model.addStockToPortfolio("atomic", "GOOG", 12, "2022-03-01");
+    model.flushPortfolioFiles();
+
+    // a write staged without its commit manifest is discarded
+    File stagedFile = new File("Portfolios/atomic.csv.tmp");
+    Files.writeString(stagedFile.toPath(), "GOOG,1.0,2022-03-01\n");
+    IModel retrievedModel = new PortfolioModel();
+    retrievedModel.retrieveExistingPortfolios();
+    assertFalse(stagedFile.exists());
+    assertEquals(3, retrievedModel.examinePortfolio("atomic").size());
+
+    // a write whose commit manifest is in place is completed, and replaces the logged trades
+    Files.writeString(stagedFile.toPath(), "GOOG,1.0,2022-03-01\n");
+    Files.writeString(new File("Portfolios/atomic-costBasis.txt.tmp").toPath(),
+            "2022-03-01,2700.0\n");
+    Files.writeString(new File("Portfolios/atomic-commit.manifest").toPath(),
+            "commit atomic.csv\ncommit atomic-costBasis.txt\n");
+    retrievedModel = new PortfolioModel();
+    retrievedModel.retrieveExistingPortfolios();
+    assertFalse(stagedFile.exists());
+    assertFalse(new File("Portfolios/atomic-commit.manifest").exists());
+    assertFalse(new File("Portfolios/atomic-transactions.log").exists());
+    assertEquals(1, retrievedModel.examinePortfolio("atomic").size());
+    assertEquals(2700, retrievedModel.getCostBasis("atomic", LocalDate.of(2022, 3, 1)), 0.001);
+
+    // a complete write leaves no staged files or manifest behind
+    retrievedModel.createPortfolioWithDollarCostAveraging("planned", 1000,
+            LocalDate.of(2021, 1, 4), LocalDate.of(2021, 6, 1), 7, Map.of("MSFT", 100f));
+    String[] fileNames = new File("Portfolios").list();
+    Arrays.sort(fileNames);
+    assertArrayEquals(new String[]{"atomic-costBasis.txt", "atomic.csv",
+        "planned-costBasis.txt", "planned.csv"}, fileNames);
+    model.deleteAllPortfolioFiles();
+  }
+
+  /**
+   * Test that a portfolio whose name starts with '-' survives the commit of its snapshots.
+   */
+  @Test
+  public void testPortfolioNameWithLeadingDash() throws IOException {
+    IModel model = new PortfolioModel();
+    model.deleteAllPortfolioFiles();
+    model.createPortfolio("-x", new File(testingCsv));
+    model.addStockToPortfolio("-x", "GOOG", 12, "2022-03-01");
+    model.flushPortfolioFiles();
+    assertTrue(new File("Portfolios/-x.csv").exists());
+    assertTrue(new File("Portfolios/-x-costBasis.txt").exists());
+    IModel retrievedModel = new PortfolioModel();
+    retrievedModel.retrieveExistingPortfolios();
+    assertEquals(List.of("-x"), retrievedModel.getPortfolioNames());
+    assertEquals(3, retrievedModel.examinePortfolio("-x").size());
+
+    // a binary snapshot is kept as well
+    IModel binaryModel = new PortfolioModel(PortfolioFileFormat.BinaryFiles, 64, 1000);
+    binaryModel.retrieveExistingPortfolios();
+    binaryModel.createPortfolioWithDollarCostAveraging("-y", 1000,
+            LocalDate.of(2021, 1, 4), LocalDate.of(2021, 6, 1), 7, Map.of("MSFT", 100f));
+    assertTrue(new File("Portfolios/-y.pfs").exists());
+    retrievedModel = new PortfolioModel();
+    retrievedModel.retrieveExistingPortfolios();
+    assertEquals(binaryModel.examinePortfolio("-y").size(),
+            retrievedModel.examinePortfolio("-y").size());
+    assertEquals(3, retrievedModel.examinePortfolio("-x").size());
+    model.deleteAllPortfolioFiles();
+  }
+
+  /**
+   * Test that stored portfolios valued together are read from their files concurrently.
+   */
+  @Test
+  public void testParallelPortfolioHydration() throws IOException {
+    IModel model = new PortfolioModel();
+    model.deleteAllPortfolioFiles();
+    new File("Portfolios").mkdirs();
+    String[] stockNames = {"AAPL", "MSFT", "GOOG"};
+    String[] purchaseDates = {"2022-01-10", "2022-02-10", "2022-03-10", "2022-04-11",
+        "2022-05-10", "2022-06-10", "2022-07-11", "2022-08-10", "2022-09-12", "2022-10-10"};
+    for (int i = 0; i < 200; i++) {
+      StringBuilder stocks = new StringBuilder();
+      for (int j = 0; j <= i % 10; j++) {
+        stocks.append(stockNames[j % 3]).append(",").append(j + 1).append(",")
+                .append(purchaseDates[j]).append("\n");
+      }
+      // a stock stored twice on one date is combined into one stock
+      stocks.append("AAPL,1,2022-01-10\n");
+      Files.writeString(new File("Portfolios/stored" + i + ".csv").toPath(), stocks);
+      Files.writeString(new File("Portfolios/stored" + i + "-costBasis.txt").toPath(),
+              "2022-01-10," + i + "\n");
+    }
+
+    model.retrieveExistingPortfolios();
+    assertEquals(200, model.getPortfolioNames().size());
+
+    // valuing the portfolios together reads them concurrently, and a portfolio that is asked for
+    // twice is still read once
+    String[] portfolioNames = new String[400];
+    for (int i = 0; i < portfolioNames.length; i++) {
+      portfolioNames[i] = "stored" + i % 200;
+    }
+    double[][] values = model.getPortfolioValues(portfolioNames,
+            new LocalDate[]{LocalDate.of(2022, 10, 28)});
+
+    IStockDataStore dataStore = new StockDataStore();
+    for (int i = 0; i < 200; i++) {
+      String portfolioName = "stored" + i;
+      List<IStock> stocks = model.examinePortfolio(portfolioName);
+      assertEquals(i % 10 + 1, stocks.size());
+      assertEquals(2, stocks.get(0).getStockQuantity(), 0.001);
+      assertEquals(i, model.getCostBasis(portfolioName, LocalDate.of(2022, 10, 28)), 0.001);
+
+      // the retrieved portfolio is valued as if its stocks had been added one by one
+      IPortfolio expected = new Portfolio(portfolioName);
+      for (IStock stock : stocks) {
+        expected.addStock(dataStore, stock, 0);
+      }
+      double expectedValue = expected.getPortfolioValue(dataStore, LocalDate.of(2022, 10, 28));
+      assertEquals(expectedValue, values[i][0], 0.001);
+      assertEquals(expectedValue, values[i + 200][0], 0.001);
+    }
+
+    // a stock that is not supported is still rejected, when its portfolio is first used
+    Files.writeString(new File("Portfolios/unsupported.csv").toPath(), "NOTASTOCK,1,2022-01-10\n");
+    Files.writeString(new File("Portfolios/unsupported-costBasis.txt").toPath(), "");
+    IModel retrievedModel = new PortfolioModel();
+    retrievedModel.retrieveExistingPortfolios();
+    try {
+      retrievedModel.examinePortfolio("unsupported");
+      fail("An unsupported stock should not have been accepted");
+    } catch (IllegalArgumentException e) {
+      // pass
+    }
+    model.deleteAllPortfolioFiles();
+  }
+
+  /**
+   * Test that binary snapshots replace the CSV files and are read back unchanged.
+   */
+  @Test
+  public void testBinaryPortfolioSnapshots() throws IOException {
+    IModel csvModel = new PortfolioModel();
+    csvModel.deleteAllPortfolioFiles();
+    csvModel.setCommissionFee(5, 10);
+    Map<String, Float> investments = new HashMap<>();
+    investments.put("AAPL", 30f);
+    investments.put("MSFT", 70f);
+    csvModel.createPortfolioWithDollarCostAveraging("book", 1000,
+            LocalDate.of(2015, 1, 5), LocalDate.of(2022, 10, 28), 7, investments);
+    csvModel.sellStocksFromPortfolio("book", "MSFT", 2.5, LocalDate.of(2022, 10, 28));
+    long csvLength = new File("Portfolios/book.csv").length()
+            + new File("Portfolios/book-costBasis.txt").length();
+
+    // a CSV snapshot is rewritten as a binary snapshot, which replaces the CSV files
+    IModel binaryModel = new PortfolioModel(PortfolioFileFormat.BinaryFiles, 64, 1000);
+    binaryModel.retrieveExistingPortfolios();
+    binaryModel.createPortfolioWithDollarCostAveraging("planned", 1000,
+            LocalDate.of(2021, 1, 4), LocalDate.of(2021, 6, 1), 7, investments);
+    for (int i = 0; i < 3000; i++) {
+      binaryModel.addStockToPortfolio("book", "AAPL", 1, "2022-10-28");
+    }
+    File binaryFile = new File("Portfolios/book.pfs");
+    assertTrue(binaryFile.exists());
+    assertFalse(new File("Portfolios/book.csv").exists());
+    assertFalse(new File("Portfolios/book-costBasis.txt").exists());
+    assertTrue(binaryFile.length() * 3 < csvLength);
+
+    IModel retrievedModel = new PortfolioModel();
+    retrievedModel.retrieveExistingPortfolios();
+    assertEquals(List.of("book", "planned"), retrievedModel.getPortfolioNames().stream()
+            .sorted().collect(Collectors.toList()));
+    for (String portfolioName : new String[]{"book", "planned"}) {
+      List<IStock> expectedStocks = binaryModel.examinePortfolio(portfolioName);
+      List<IStock> actualStocks = retrievedModel.examinePortfolio(portfolioName);
+      assertEquals(expectedStocks.size(), actualStocks.size());
+      for (int i = 0; i < expectedStocks.size(); i++) {
+        assertEquals(expectedStocks.get(i).getStockName(), actualStocks.get(i).getStockName());
+        assertEquals(expectedStocks.get(i).getQuantityUnits(),
+                actualStocks.get(i).getQuantityUnits());
+        assertEquals(expectedStocks.get(i).getPurchaseDate(),
+                actualStocks.get(i).getPurchaseDate());
+      }
+      for (LocalDate date = LocalDate.of(2015, 1, 5); date.getYear() < 2023;
+           date = date.plusMonths(7)) {
+        assertEquals(binaryModel.getCostBasis(portfolioName, date),
+                retrievedModel.getCostBasis(portfolioName, date), 0.0);
+      }
+    }
+
+    // an invalid binary snapshot falls back to the CSV snapshot
+    Files.writeString(new File("Portfolios/fallback.csv").toPath(), "GOOG,3,2022-03-01\n");
+    Files.writeString(new File("Portfolios/fallback-costBasis.txt").toPath(),
+            "2022-03-01,100.0\n");
+    Files.writeString(new File("Portfolios/fallback.pfs").toPath(), "PFS9 is not supported");
+    retrievedModel = new PortfolioModel();
+    retrievedModel.retrieveExistingPortfolios();
+    assertEquals(1, retrievedModel.examinePortfolio("fallback").size());
+    assertEquals(100, retrievedModel.getCostBasis("fallback", LocalDate.of(2022, 3, 1)), 0.0);
+    csvModel.deleteAllPortfolioFiles();
+  }
+
+  /**
+   * Test that stored portfolios are read on first use, and are evicted within the budget.
+   */
+  @Test
+  public void testLazyPortfolioHydration() throws IOException, ParseException {
+    // each portfolio of the testing file has 2 stocks, so only one fits in the memory budget
+    IModel model = new PortfolioModel(PortfolioFileFormat.CsvFiles, 64, 1000, 400);
+    model.deleteAllPortfolioFiles();
+    for (int i = 0; i < 4; i++) {
+      model.createPortfolio("lazy" + i, new File(testingCsv));
+    }
+    double expectedValue = model.getPortfolioValue("lazy0", LocalDate.of(2022, 10, 28));
+
+    // an evicted portfolio is read again, and keeps the trades made on it
+    model.addStockToPortfolio("lazy0", "GOOG", 5, "2022-10-27");
+    model.sellStocksFromPortfolio("lazy1", "MSFT", 40, LocalDate.of(2022, 10, 28));
+    assertEquals(3, model.examinePortfolio("lazy0").size());
+    assertEquals(60, model.examinePortfolio("lazy1").get(0).getStockQuantity(), 0.001);
+    assertEquals(expectedValue, model.getPortfolioValue("lazy3", LocalDate.of(2022, 10, 28)),
+            0.001);
+
+    // a balanced portfolio is stored, so that it is not lost when it is evicted
+    Map<String, Double> percentages = new HashMap<>();
+    percentages.put("AAPL", 50.0);
+    percentages.put("MSFT", 50.0);
+    model.balancePortfolio("lazy2", LocalDate.of(2022, 10, 28), percentages);
+    assertTrue(new File("Portfolios/lazy2-transactions.log").exists());
+    List<IStock> balancedStocks = model.examinePortfolio("lazy2");
+    double balancedValue = model.getPortfolioValue("lazy2", LocalDate.of(2022, 10, 28));
+    model.examinePortfolio("lazy3");
+    assertEquals(balancedStocks.size(), model.examinePortfolio("lazy2").size());
+    assertEquals(balancedValue, model.getPortfolioValue("lazy2", LocalDate.of(2022, 10, 28)),
+            0.001);
+
+    // retrieving the stored portfolios only registers their names
+    IModel retrievedModel = new PortfolioModel(PortfolioFileFormat.CsvFiles, 64, 1000, 400);
+    retrievedModel.retrieveExistingPortfolios();
+    List<String> retrievedNames = retrievedModel.getPortfolioNames();
+    assertEquals(model.getPortfolioNames(),
+            retrievedNames.stream().sorted().collect(Collectors.toList()));
+    assertTrue(retrievedModel.isValidTickerSymbol("GOOG", retrievedNames.indexOf("lazy0") + 1));
+    assertFalse(retrievedModel.isValidTickerSymbol("GOOG", retrievedNames.indexOf("lazy1") + 1));
+    assertEquals(balancedValue,
+            retrievedModel.getPortfolioValue("lazy2", LocalDate.of(2022, 10, 28)), 0.001);
+    model.deleteAllPortfolioFiles();
+  }
+}
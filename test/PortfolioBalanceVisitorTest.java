@@ -1,16 +1,121 @@
 import org.junit.Before;
 import org.junit.Test;
 
+import java.text.ParseException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import model.IPortfolio;
+import model.IStock;
+import model.Portfolio;
+import model.PortfolioBalanceVisitor;
+import model.PortfolioVisitor;
+import model.Stock;
+import model.stockdatastore.IStockDataStore;
+import model.stockdatastore.StockDataSource;
+import model.stockdatastore.StockDataStore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
 /**
  * JUnit tests for Visitor class .
  */
 public class PortfolioBalanceVisitorTest {
+  private final LocalDate balanceDate = LocalDate.of(2022, 10, 28);
+  private IStockDataStore dataStore;
+  private IPortfolio portfolio;
 
   @Before
   public void setUp() throws Exception {
+    dataStore = new StockDataStore(StockDataSource.LocalDataFiles);
+    portfolio = new Portfolio("balanced");
+    String[] stockNames = {"MSFT", "AAPL", "AMZN"};
+    LocalDate date = dataStore.getNextValidMarketDate(LocalDate.of(2020, 1, 2));
+    for (int i = 0; i < 600; i++) {
+      portfolio.addStock(dataStore, new Stock(stockNames[i % 3], 1 + i % 4, date), 0);
+      date = dataStore.getNextValidMarketDate(date.plusDays(1));
+    }
+  }
+
+  @Test
+  public void apply() throws ParseException {
+    List<IStock> stocksBefore = new ArrayList<>(portfolio.getStocksList());
+    double totalMoney = getMoney(null);
+    double amazonMoney = getMoney("AMZN");
+
+    Map<String, Double> percentages = new LinkedHashMap<>();
+    percentages.put("MSFT", 40.0);
+    percentages.put("AAPL", 30.0);
+    percentages.put("GOOG", 10.0);
+    List<IStock> reportedLots = new ArrayList<>();
+    List<Double> reportedCostBasisAmounts = new ArrayList<>();
+    PortfolioVisitor<IPortfolio> visitor = new PortfolioBalanceVisitor<>(balanceDate, dataStore,
+            percentages, x -> x, (lot, costBasisAmount) -> {
+              reportedLots.add(lot);
+              reportedCostBasisAmounts.add(costBasisAmount);
+            });
+    double costBasis = portfolio.getCostBasis(balanceDate);
+    assertSame(portfolio, visitor.apply(portfolio));
+
+    // only the trades are added, after the existing lots, which are left as they were
+    List<IStock> stocksAfter = portfolio.getStocksList();
+    assertEquals(stocksBefore.size() + 3, stocksAfter.size());
+    for (int i = 0; i < stocksBefore.size(); i++) {
+      assertEquals(stocksBefore.get(i).getStockName(), stocksAfter.get(i).getStockName());
+      assertEquals(stocksBefore.get(i).getQuantityUnits(), stocksAfter.get(i).getQuantityUnits());
+      assertEquals(stocksBefore.get(i).getPurchaseDate(), stocksAfter.get(i).getPurchaseDate());
+    }
+    for (int i = stocksBefore.size(); i < stocksAfter.size(); i++) {
+      assertEquals(balanceDate, stocksAfter.get(i).getPurchaseDate());
+    }
+
+    // every added lot is reported with the amount it added to the cost basis, its price
+    assertEquals(stocksAfter.subList(stocksBefore.size(), stocksAfter.size()), reportedLots);
+    for (int i = 0; i < reportedLots.size(); i++) {
+      assertEquals(dataStore.getStockValue(reportedLots.get(i).getStockName(), balanceDate),
+              reportedCostBasisAmounts.get(i), 0.0);
+      costBasis += reportedCostBasisAmounts.get(i);
+    }
+    assertEquals(costBasis, portfolio.getCostBasis(balanceDate), 0.001);
+
+    // each target stock is worth its percentage of the portfolio's value before balancing, to
+    // within the rounding of the traded quantities
+    for (Map.Entry<String, Double> percentage : percentages.entrySet()) {
+      double price = dataStore.getStockValue(percentage.getKey(), balanceDate);
+      assertEquals(percentage.getValue() / 100 * totalMoney, getMoney(percentage.getKey()),
+              0.005 * price);
+    }
+    assertEquals(amazonMoney, getMoney("AMZN"), 0.0);
   }
 
   @Test
-  public void apply() {
+  public void applyUnsupportedStock() throws ParseException {
+    int stockCount = portfolio.getStocksList().size();
+    Map<String, Double> percentages = new LinkedHashMap<>();
+    percentages.put("MSFT", 50.0);
+    percentages.put("NOTASTOCK", 50.0);
+    try {
+      new PortfolioBalanceVisitor<>(balanceDate, dataStore, percentages, x -> x)
+              .apply(portfolio);
+      fail("An unsupported stock should not have been accepted");
+    } catch (IllegalArgumentException e) {
+      assertEquals(stockCount, portfolio.getStocksList().size());
+    }
+  }
+
+  private double getMoney(String stockName) {
+    double money = 0;
+    for (IStock stock : portfolio.getStocksList()) {
+      if (stockName == null || stock.getStockName().equals(stockName)) {
+        money += dataStore.getStockValue(stock.getStockName(), balanceDate)
+                * stock.getStockQuantity();
+      }
+    }
+    return money;
   }
-}
\ No newline at end of file
+}
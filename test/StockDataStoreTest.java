@@ -0,0 +1,503 @@
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import model.stockdatastore.BinaryStockDataFile;
+import model.stockdatastore.IStockDataStore;
+import model.stockdatastore.IStockPrice;
+import model.stockdatastore.IStockPriceSeries;
+import model.stockdatastore.MarketCalendar;
+import model.stockdatastore.StockDataFetcher;
+import model.stockdatastore.StockDataSource;
+import model.stockdatastore.StockDataStore;
+import model.stockdatastore.StockPrice;
+import model.stockdatastore.StockPriceCache;
+import model.stockdatastore.StockPriceSeries;
+import model.stockdatastore.TickerSymbolTable;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * This class tests the stock data store and the price series that it keeps for each stock.
+ */
+public class StockDataStoreTest {
+
+  private IStockPriceSeries getTestSeries() {
+    // prices are added in descending order of date, as they appear in the data files
+    List<IStockPrice> stockPrices = new ArrayList<>();
+    stockPrices.add(new StockPrice(LocalDate.of(2022, 10, 31), 153.34));
+    stockPrices.add(new StockPrice(LocalDate.of(2022, 10, 28), 155.74));
+    stockPrices.add(new StockPrice(LocalDate.of(2022, 10, 27), 144.80));
+    stockPrices.add(new StockPrice(LocalDate.of(2022, 10, 26), 149.35));
+    return new StockPriceSeries("AAPL", stockPrices);
+  }
+
+  /**
+   * Test that a price series is sorted by market date and looks up prices by date.
+   */
+  @Test
+  public void testStockPriceSeriesLookup() {
+    IStockPriceSeries series = getTestSeries();
+
+    assertEquals("AAPL", series.getStockName());
+    assertEquals(4, series.size());
+    assertEquals(LocalDate.of(2022, 10, 26).toEpochDay(), series.getMarketDay(0));
+    assertEquals(LocalDate.of(2022, 10, 31).toEpochDay(), series.getMarketDay(3));
+    assertEquals(155.74, series.getMarketPrice(LocalDate.of(2022, 10, 28)), 0.001);
+    assertEquals(149.35, series.getMarketPrice(0), 0.001);
+    assertEquals(2, series.indexOf((int) LocalDate.of(2022, 10, 28).toEpochDay()));
+  }
+
+  /**
+   * Test that a price series rejects dates that are not present in it.
+   */
+  @Test
+  public void testStockPriceSeriesMissingDate() {
+    IStockPriceSeries series = getTestSeries();
+
+    assertTrue(series.indexOf((int) LocalDate.of(2022, 10, 29).toEpochDay()) < 0);
+    try {
+      series.getMarketPrice(LocalDate.of(2022, 10, 29));
+      fail("A price should not be present for a weekend");
+    } catch (NoSuchElementException e) {
+      assertEquals("Stock price for stock AAPL is not present for 2022-10-29. "
+              + "Please enter a valid date.", e.getMessage());
+    }
+  }
+
+  /**
+   * Test that the market calendar answers membership and next/previous trading day queries.
+   */
+  @Test
+  public void testMarketCalendar() {
+    MarketCalendar calendar = new MarketCalendar(getTestSeries());
+    int friday = (int) LocalDate.of(2022, 10, 28).toEpochDay();
+    int saturday = (int) LocalDate.of(2022, 10, 29).toEpochDay();
+    int monday = (int) LocalDate.of(2022, 10, 31).toEpochDay();
+
+    assertEquals(4, calendar.size());
+    assertTrue(calendar.isMarketDay(friday));
+    assertFalse(calendar.isMarketDay(saturday));
+    assertFalse(calendar.isMarketDay(friday - 365));
+    assertEquals(monday, calendar.getNextMarketDay(saturday));
+    assertEquals(friday, calendar.getPreviousMarketDay(saturday));
+    assertEquals(friday, calendar.getNextMarketDay(friday));
+    assertEquals(MarketCalendar.NO_MARKET_DAY, calendar.getNextMarketDay(monday + 1));
+    assertEquals(MarketCalendar.NO_MARKET_DAY, calendar.getPreviousMarketDay(friday - 365));
+  }
+
+  /**
+   * Test that a stock data file converted to the binary format contains the same prices as the
+   * CSV data file.
+   */
+  @Test
+  public void testBinaryStockDataFile() throws IOException {
+    File binaryDataFile = File.createTempFile("AAPL", BinaryStockDataFile.FILE_EXTENSION);
+    binaryDataFile.deleteOnExit();
+    BinaryStockDataFile.convertCsvToBinary(new File("StockDataFiles/AAPL.csv"), binaryDataFile);
+    IStockPriceSeries series = BinaryStockDataFile.map("AAPL", binaryDataFile);
+
+    IStockDataStore csvDataStore = new StockDataStore(StockDataSource.LocalDataFiles);
+    LocalDate date = LocalDate.of(2022, 10, 28);
+    assertEquals(155.74, series.getMarketPrice(date), 0.0);
+    assertEquals(csvDataStore.getStockValue("AAPL", date), series.getMarketPrice(date), 0.0);
+    for (int i = 1; i < series.size(); i++) {
+      assertTrue(series.getMarketDay(i - 1) < series.getMarketDay(i));
+    }
+    assertTrue(series.indexOf((int) LocalDate.of(2022, 10, 29).toEpochDay()) < 0);
+  }
+
+  /**
+   * Test that a binary stock data file is converted again once its CSV data file is rewritten,
+   * instead of serving the stale binary prices.
+   */
+  @Test
+  public void testStaleBinaryStockDataFile() throws IOException {
+    File dataDirectory = Files.createTempDirectory("StockDataFiles").toFile();
+    try {
+      Files.copy(new File("StockDataFiles/supported-stocks-list.txt").toPath(),
+              new File(dataDirectory, "supported-stocks-list.txt").toPath());
+      File csvDataFile = new File(dataDirectory, "AAPL.csv");
+      List<String> rows = Files.readAllLines(new File("StockDataFiles/AAPL.csv").toPath());
+      Files.write(csvDataFile.toPath(), rows);
+      LocalDate date = LocalDate.of(2022, 10, 31);
+      IStockDataStore dataStore = new StockDataStore(dataDirectory, StockDataSource.BinaryDataFiles,
+              null, StockPriceCache.UNBOUNDED);
+      assertEquals(153.34, dataStore.getStockValue("AAPL", date), 0.0);
+
+      // rewrite the latest close price, as a refresh of the CSV data file would
+      String[] latestRow = rows.get(1).split(",");
+      latestRow[4] = "160.5";
+      rows.set(1, String.join(",", latestRow));
+      Files.write(csvDataFile.toPath(), rows);
+      csvDataFile.setLastModified(csvDataFile.lastModified() + 2000);
+      dataStore = new StockDataStore(dataDirectory, StockDataSource.BinaryDataFiles, null,
+              StockPriceCache.UNBOUNDED);
+      assertEquals(160.5, dataStore.getStockValue("AAPL", date), 0.0);
+    } finally {
+      deleteDirectory(dataDirectory);
+    }
+  }
+
+  /**
+   * Test that the batch valuation returns the same prices as individual lookups, in the order of
+   * the given stocks and dates, with NaN for missing prices.
+   */
+  @Test
+  public void testGetStockValues() {
+    IStockDataStore dataStore = new StockDataStore(StockDataSource.LocalDataFiles);
+    String[] stockNames = {"MSFT", "AAPL"};
+    LocalDate[] dates = {
+        LocalDate.of(2022, 10, 28),
+        LocalDate.of(2021, 1, 26),
+        LocalDate.of(2022, 10, 29),
+        LocalDate.of(2022, 5, 10)
+    };
+
+    double[][] stockValues = dataStore.getStockValues(stockNames, dates);
+    assertEquals(2, stockValues.length);
+    for (int i = 0; i < stockNames.length; i++) {
+      assertEquals(dates.length, stockValues[i].length);
+      for (int j = 0; j < dates.length; j++) {
+        if (j == 2) {
+          assertTrue(Double.isNaN(stockValues[i][j]));
+        } else {
+          assertEquals(dataStore.getStockValue(stockNames[i], dates[j]), stockValues[i][j], 0.0);
+        }
+      }
+    }
+  }
+
+  /**
+   * Test that concurrent lookups of a stock that is not loaded yet all see the same price.
+   */
+  @Test
+  public void testConcurrentStockValueLookups() throws Exception {
+    IStockDataStore dataStore = new StockDataStore(StockDataSource.LocalDataFiles);
+    LocalDate date = LocalDate.of(2022, 10, 28);
+    int threadCount = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<Double>> stockValues = new ArrayList<>();
+    for (int i = 0; i < threadCount; i++) {
+      stockValues.add(executor.submit(() -> {
+        start.await();
+        return dataStore.getStockValue("MSFT", date);
+      }));
+    }
+    start.countDown();
+
+    try {
+      double expected = stockValues.get(0).get();
+      for (Future<Double> stockValue : stockValues) {
+        assertEquals(expected, stockValue.get(), 0.0);
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertTrue(dataStore.isValidStockMarketDate(date));
+  }
+
+  /**
+   * Test that the stock price cache evicts the least recently used series when it exceeds its
+   * memory budget, and loads an evicted series again on demand.
+   */
+  @Test
+  public void testStockPriceCacheEviction() {
+    Map<String, Integer> loadCounts = new HashMap<>();
+    IStockPriceSeries testSeries = getTestSeries();
+    // each series has 4 market dates of 12 bytes, so the budget fits two series
+    StockPriceCache cache = new StockPriceCache(100, stockName -> {
+      loadCounts.merge(stockName, 1, Integer::sum);
+      return testSeries;
+    });
+
+    cache.get("AAPL");
+    cache.get("MSFT");
+    assertEquals(96, cache.getMemoryUsage());
+    cache.get("AAPL");
+    cache.get("GOOG");
+    assertTrue(cache.contains("AAPL"));
+    assertFalse(cache.contains("MSFT"));
+    assertTrue(cache.contains("GOOG"));
+    assertEquals(96, cache.getMemoryUsage());
+
+    assertEquals(155.74, cache.get("MSFT").getMarketPrice(LocalDate.of(2022, 10, 28)), 0.001);
+    assertEquals(2, (int) loadCounts.get("MSFT"));
+    assertEquals(1, (int) loadCounts.get("AAPL"));
+    assertFalse(cache.contains("AAPL"));
+  }
+
+  /**
+   * Test that the stock price cache looks cached series up by ticker id, and that a series that
+   * was evicted is loaded again when it is looked up by id.
+   */
+  @Test
+  public void testStockPriceCacheLookupById() {
+    Map<String, Integer> loadCounts = new HashMap<>();
+    IStockPriceSeries testSeries = getTestSeries();
+    TickerSymbolTable table = new TickerSymbolTable(Arrays.asList("AAPL", "MSFT", "GOOG"));
+    StockPriceCache cache = new StockPriceCache(100, table, stockName -> {
+      loadCounts.merge(stockName, 1, Integer::sum);
+      return testSeries;
+    });
+
+    assertSame(testSeries, cache.get(0));
+    cache.get(1);
+    cache.get(0);
+    assertEquals(1, (int) loadCounts.get("AAPL"));
+    cache.get("GOOG");
+    assertTrue(cache.contains("AAPL"));
+    assertFalse(cache.contains("MSFT"));
+    assertEquals(96, cache.getMemoryUsage());
+
+    assertEquals(155.74, cache.get(1).getMarketPrice(LocalDate.of(2022, 10, 28)), 0.001);
+    assertEquals(2, (int) loadCounts.get("MSFT"));
+    assertFalse(cache.contains("AAPL"));
+    assertEquals(96, cache.getMemoryUsage());
+    try {
+      cache.get(3);
+      fail("A series should not be found for an id outside the ticker symbol table");
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Test that a store with a small memory budget still prices every stock, reloading evicted
+   * stocks from the stock data files.
+   */
+  @Test
+  public void testStockDataStoreMemoryBudget() {
+    IStockDataStore dataStore = new StockDataStore(StockDataSource.LocalDataFiles, null, 1);
+    IStockDataStore unboundedStore = new StockDataStore(StockDataSource.LocalDataFiles);
+    LocalDate date = LocalDate.of(2022, 10, 28);
+    for (int i = 0; i < 2; i++) {
+      for (String stockName : new String[]{"MSFT", "AAPL", "GOOG"}) {
+        assertEquals(unboundedStore.getStockValue(stockName, date),
+                dataStore.getStockValue(stockName, date), 0.0);
+      }
+    }
+  }
+
+  /**
+   * Test that the ticker symbol table numbers the supported stocks densely, in the order of the
+   * supported stocks list.
+   */
+  @Test
+  public void testTickerSymbolTable() {
+    TickerSymbolTable table = new TickerSymbolTable(Arrays.asList("MSFT", "AAPL", "MSFT", "GOOG"));
+    assertEquals(3, table.size());
+    assertEquals(Arrays.asList("MSFT", "AAPL", "GOOG"), table.getSymbols());
+    assertEquals(1, table.getId("AAPL"));
+    assertEquals(TickerSymbolTable.NO_ID, table.getId("NOTASTOCK"));
+    assertEquals("GOOG", table.getSymbol(2));
+    assertFalse(table.contains("NOTASTOCK"));
+
+    IStockDataStore dataStore = new StockDataStore(StockDataSource.LocalDataFiles);
+    TickerSymbolTable supportedStocks = dataStore.getTickerSymbolTable();
+    assertEquals(dataStore.getSupportedStocksList(), supportedStocks.getSymbols());
+    for (String stockName : dataStore.getSupportedStocksList()) {
+      assertTrue(dataStore.isAcceptableStock(stockName));
+      assertEquals(stockName, supportedStocks.getSymbol(supportedStocks.getId(stockName)));
+    }
+    assertFalse(dataStore.isAcceptableStock("NOTASTOCK"));
+
+    String[] stockNames = {"GOOG", "MSFT", "AAPL"};
+    int[] tickerIds = new int[stockNames.length];
+    for (int i = 0; i < stockNames.length; i++) {
+      tickerIds[i] = supportedStocks.getId(stockNames[i]);
+      assertSame(dataStore.getStockPriceSeries(stockNames[i]),
+              dataStore.getStockPriceSeries(tickerIds[i]));
+    }
+    LocalDate[] dates = {LocalDate.of(2022, 10, 28), LocalDate.of(2022, 10, 29),
+        LocalDate.of(2021, 3, 1)};
+    double[][] stockValues = dataStore.getStockValues(stockNames, dates);
+    double[][] stockValuesById = dataStore.getStockValues(tickerIds, dates);
+    for (int i = 0; i < stockNames.length; i++) {
+      assertArrayEquals(stockValues[i], stockValuesById[i], 0.0);
+    }
+    try {
+      dataStore.getStockPriceSeries(supportedStocks.size());
+      fail("A series should not be found for an id outside the ticker symbol table");
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Test that stock data is fetched in parallel from a file backed stand-in for the API, and that
+   * the fetched data is written through to the stock data files directory.
+   */
+  @Test
+  public void testStockDataFetcher() throws IOException {
+    File cacheDirectory = Files.createTempDirectory("StockDataFiles").toFile();
+    try {
+      String endpoint = new File("StockDataFiles").toURI() + "{symbol}.csv";
+      StockDataFetcher fetcher = new StockDataFetcher(endpoint, "", 2, 100, cacheDirectory);
+
+      List<String> stockSymbols = List.of("AAPL", "MSFT", "GOOG");
+      Map<String, String> stockData = fetcher.fetchAll(stockSymbols);
+      assertEquals(stockSymbols, List.copyOf(stockData.keySet()));
+      for (String stockSymbol : stockSymbols) {
+        String expected = Files.readString(new File("StockDataFiles", stockSymbol + ".csv")
+                .toPath());
+        assertEquals(expected, stockData.get(stockSymbol));
+        assertEquals(expected, Files.readString(new File(cacheDirectory, stockSymbol + ".csv")
+                .toPath()));
+      }
+
+      IStockDataStore dataStore = new StockDataStore(StockDataSource.API, fetcher);
+      assertEquals(155.74, dataStore.getStockValue("AAPL", LocalDate.of(2022, 10, 28)), 0.001);
+
+      try {
+        fetcher.fetch("UNKNOWN");
+        fail("Price data should not be found for an unknown stock");
+      } catch (IllegalArgumentException e) {
+        assertEquals("No price data found for UNKNOWN", e.getMessage());
+      }
+    } finally {
+      deleteDirectory(cacheDirectory);
+    }
+  }
+
+  /**
+   * Test that a cached stock data file is refreshed with only the prices newer than its latest
+   * cached price, leaving out the prices of the current day, which is not over yet.
+   */
+  @Test
+  public void testIncrementalRefresh() throws IOException {
+    List<String> rows = Files.readAllLines(new File("StockDataFiles/AAPL.csv").toPath());
+    File endpointDirectory = Files.createTempDirectory("endpoint").toFile();
+    File cacheDirectory = Files.createTempDirectory("StockDataFiles").toFile();
+    try {
+      // the endpoint serves today's partial prices and the 100 most recent prices as the
+      // compact output, and the cache holds the full history except for the 3 most recent
+      // prices
+      String partialRow = LocalDate.now() + ",150.0,151.0,149.0,150.5,1000";
+      List<String> compactRows = new ArrayList<>(rows.subList(0, 101));
+      compactRows.add(1, partialRow);
+      List<String> cachedRows = new ArrayList<>(rows.subList(4, rows.size()));
+      cachedRows.add(0, rows.get(0));
+      Files.write(new File(endpointDirectory, "AAPL-compact.csv").toPath(), compactRows);
+      Files.write(new File(cacheDirectory, "AAPL.csv").toPath(), cachedRows);
+
+      String endpoint = endpointDirectory.toURI() + "{symbol}-{outputsize}.csv";
+      StockDataFetcher fetcher = new StockDataFetcher(endpoint, "", 1, 100, cacheDirectory);
+      fetcher.refresh("AAPL");
+
+      assertEquals(rows, Files.readAllLines(new File(cacheDirectory, "AAPL.csv").toPath()));
+
+      // a full fetch leaves the partial prices out as well
+      List<String> fullRows = new ArrayList<>(rows);
+      fullRows.add(1, partialRow);
+      Files.write(new File(endpointDirectory, "AAPL-full.csv").toPath(), fullRows);
+      fetcher.fetch("AAPL");
+      assertEquals(rows, Files.readAllLines(new File(cacheDirectory, "AAPL.csv").toPath()));
+
+      // an unreachable endpoint leaves the cached prices available
+      fetcher = new StockDataFetcher(new File(endpointDirectory, "missing").toURI()
+              + "{symbol}.csv", "", 1, 100, cacheDirectory);
+      IStockDataStore dataStore = new StockDataStore(StockDataSource.API, fetcher);
+      assertEquals(153.34, dataStore.getStockValue("AAPL", LocalDate.of(2022, 10, 31)), 0.001);
+
+      // requests that cannot connect do not use up the rate limit, so they fail without waiting
+      fetcher = new StockDataFetcher(new File(endpointDirectory, "missing").toURI()
+              + "{symbol}.csv", "", 1, 1, null);
+      long start = System.nanoTime();
+      for (int i = 0; i < 3; i++) {
+        try {
+          fetcher.fetch("AAPL");
+          fail("Prices should not have been fetched from an unreachable endpoint");
+        } catch (IllegalArgumentException e) {
+          // pass
+        }
+      }
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+    } finally {
+      deleteDirectory(endpointDirectory);
+      deleteDirectory(cacheDirectory);
+    }
+  }
+
+  /**
+   * Test that a refresh that finds no newer prices is not repeated until another day has closed,
+   * and that a refresh returns the cached prices instead of waiting for the rate limit.
+   */
+  @Test
+  public void testRefreshWithoutWaiting() throws IOException {
+    List<String> rows = Files.readAllLines(new File("StockDataFiles/AAPL.csv").toPath());
+    File endpointDirectory = Files.createTempDirectory("endpoint").toFile();
+    File cacheDirectory = Files.createTempDirectory("StockDataFiles").toFile();
+    try {
+      // the endpoint has no prices newer than the cached ones, as after a market holiday
+      File compactFile = new File(endpointDirectory, "AAPL-compact.csv");
+      File cachedFile = new File(cacheDirectory, "AAPL.csv");
+      File checkedMarkerFile = new File(cacheDirectory, "AAPL.checked");
+      Files.write(compactFile.toPath(), rows.subList(0, 101));
+      Files.write(cachedFile.toPath(), rows);
+      String endpoint = endpointDirectory.toURI() + "{symbol}-{outputsize}.csv";
+      StockDataFetcher fetcher = new StockDataFetcher(endpoint, "", 1, 100, cacheDirectory);
+      fetcher.refresh("AAPL");
+      assertTrue(checkedMarkerFile.exists());
+
+      // once it has been checked, the stock is not requested again until another day has closed
+      List<String> compactRows = new ArrayList<>(rows.subList(0, 101));
+      compactRows.add(1, "2022-11-01,155.0,156.0,154.0,155.5,1000");
+      Files.write(compactFile.toPath(), compactRows);
+      fetcher.refresh("AAPL");
+      assertEquals(rows, Files.readAllLines(cachedFile.toPath()));
+      assertTrue(checkedMarkerFile.setLastModified(0));
+      fetcher.refresh("AAPL");
+      assertEquals(compactRows.get(1), Files.readAllLines(cachedFile.toPath()).get(1));
+
+      // when the rate limit allows no request, the cached prices are returned without waiting
+      List<String> cachedRows = new ArrayList<>(rows.subList(4, rows.size()));
+      cachedRows.add(0, rows.get(0));
+      for (String stockSymbol : new String[]{"MSFT", "GOOG"}) {
+        Files.write(new File(endpointDirectory, stockSymbol + "-compact.csv").toPath(),
+                rows.subList(0, 101));
+        Files.write(new File(cacheDirectory, stockSymbol + ".csv").toPath(), cachedRows);
+      }
+      fetcher = new StockDataFetcher(endpoint, "", 1, 1, cacheDirectory);
+      long start = System.nanoTime();
+      fetcher.refresh("MSFT");
+      fetcher.refresh("GOOG");
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+      assertEquals(rows, Files.readAllLines(new File(cacheDirectory, "MSFT.csv").toPath()));
+      assertEquals(cachedRows, Files.readAllLines(new File(cacheDirectory, "GOOG.csv").toPath()));
+    } finally {
+      deleteDirectory(endpointDirectory);
+      deleteDirectory(cacheDirectory);
+    }
+  }
+
+  private static void deleteDirectory(File directory) {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        deleteDirectory(file);
+      }
+    }
+    directory.delete();
+  }
+}